@@ -0,0 +1,110 @@
+// AnytimeBrain.java
+
+package tetris;
+
+/**
+ A brain that searches for as long as it is allowed to.
+
+ bestMove() first finds the DefaultBrain move, so there is always
+ a move to return. Then it deepens one chance node at a time
+ with an ExpectimaxBrain (see there for the search), each depth
+ replacing the move when it finishes before the deadline. A depth
+ cut off by the deadline is thrown away, and the move from the
+ deepest finished one is returned.
+
+ The only work not bounded by the deadline is the DefaultBrain
+ pass and the last few plays tried before the clock is read, so
+ a move comes back very soon after it.
+
+ The depth reached by each move is counted, see getCompletedDepth()
+ and getDepthCounts(). Not thread safe -- use one per thread.
+*/
+public class AnytimeBrain extends DefaultBrain {
+    private final long timeNanos;           // per move, for the Brain interface
+    private final ExpectimaxBrain[] searches;   // [d] searches d+1 deep
+    private final Brain.Move trial = new Brain.Move();
+
+    private int completedDepth;
+    private final int[] depthCounts;
+
+    /**
+     Creates a brain that takes up to 50ms a move and searches
+     at most 3 chance nodes deep, 4 plays per move node.
+    */
+    public AnytimeBrain() {
+        this(50000000L, 3, 4);
+    }
+
+    /**
+     Creates a brain that takes up to timeNanos a move, when called
+     through the Brain interface, and searches at most maxDepth chance
+     nodes deep with the given plays searched per move node.
+    */
+    public AnytimeBrain(long timeNanos, int maxDepth, int branching) {
+        if (maxDepth < 0 || branching < 1) throw new RuntimeException("Bad search size");
+        this.timeNanos = timeNanos;
+        searches = new ExpectimaxBrain[maxDepth];
+        for (int d = 0; d<maxDepth; d++) {
+            searches[d] = new ExpectimaxBrain(d+1, branching, Integer.MAX_VALUE);
+        }
+        depthCounts = new int[maxDepth+1];
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        return bestMove(board, piece, limitHeight, move, System.nanoTime() + timeNanos);
+    }
+
+    /**
+     Returns the best move found before System.nanoTime() reaches
+     the deadline, or null if no play is possible.
+    */
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move, long deadline) {
+        move = super.bestMove(board, piece, limitHeight, move);
+        completedDepth = 0;
+        if (move == null) {
+            depthCounts[0]++;
+            return(null);
+        }
+
+        for (int d = 0; d<searches.length && System.nanoTime() - deadline < 0; d++) {
+            if (searches[d].bestMove(board, piece, limitHeight, trial, deadline) == null) break;
+            if (searches[d].isTimedOut()) break;
+            move.x = trial.x;
+            move.y = trial.y;
+            move.piece = trial.piece;
+            move.score = trial.score;
+            completedDepth = d+1;
+        }
+        depthCounts[completedDepth]++;
+        return(move);
+    }
+
+    /**
+     Returns the depth, in chance nodes, of the search that gave
+     the last move. 0 is the DefaultBrain move.
+    */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     Returns, for each depth, how many moves have come from
+     a search of that depth.
+    */
+    public int[] getDepthCounts() {
+        return depthCounts.clone();
+    }
+
+    /**
+     Returns the average depth of the moves so far.
+    */
+    public double getAverageDepth() {
+        long moves = 0;
+        long sum = 0;
+        for (int d = 0; d<depthCounts.length; d++) {
+            moves += depthCounts[d];
+            sum += (long) d * depthCounts[d];
+        }
+        return (moves == 0) ? 0 : ((double) sum) / moves;
+    }
+}
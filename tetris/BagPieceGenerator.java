@@ -0,0 +1,58 @@
+// BagPieceGenerator.java
+
+package tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ The "7-bag": the pieces are dealt from a bag holding one of each,
+ shuffled, and a new bag is started when it runs out. So every
+ piece comes once in each run of 7 (from the start of the game),
+ and a piece never waits more than 12 turns to come again.
+*/
+public class BagPieceGenerator implements PieceGenerator {
+    private final SplittableRandom random;
+    private final byte[] bag;
+    private int left;    // pieces not yet dealt, bag[0] to bag[left-1]
+
+    /**
+     A bag of the 7 standard pieces, seeded.
+    */
+    public BagPieceGenerator(long seed) {
+        this(new SplittableRandom(seed), Piece.getPieces().length);
+    }
+
+    public BagPieceGenerator(SplittableRandom random, int count) {
+        this.random = random;
+        bag = new byte[count];
+        for (int i = 0; i<count; i++) bag[i] = (byte) i;
+    }
+
+    /*
+     Deals a random piece from what is left of the bag, refilling it
+     first if it is empty. The dealt piece swaps to the end, so the
+     bag always holds one of each.
+    */
+    public int next() {
+        if (left == 0) left = bag.length;
+        int i = random.nextInt(left);
+        byte piece = bag[i];
+        left--;
+        bag[i] = bag[left];
+        bag[left] = piece;
+        return piece;
+    }
+
+    public void fill(byte[] out, int offset, int length) {
+        for (int i = offset; i<offset+length; i++) {
+            out[i] = (byte) next();
+        }
+    }
+
+    /**
+     Returns a new bag generator with its own stream, starting on a full bag.
+    */
+    public BagPieceGenerator split() {
+        return new BagPieceGenerator(random.split(), bag.length);
+    }
+}
@@ -0,0 +1,21 @@
+// BatchedBrain.java -- the interface for brains that take many boards a call
+
+package tetris;
+
+public interface BatchedBrain extends Brain {
+    /**
+     Finds the best move for each of the first count (board, piece,
+     limitHeight) triples, as bestMove() would, into moves[i].
+     A move whose piece is null means no play was possible on that board.
+     The Move objects in the moves array are reused, and any missing
+     ones are made. If moves is null or shorter than count, a
+     bigger array is made (keeping the moves there). Returns the
+     array of moves.
+
+     The gain over calling bestMove() in a loop is whatever the
+     brain makes of having all the boards at once: ParallelBrain
+     searches them on many threads, while DefaultBrain's version
+     is just that loop.
+    */
+    public Brain.Move[] bestMoves(Board[] boards, Piece[] pieces, int[] limitHeights, int count, Brain.Move[] moves);
+}
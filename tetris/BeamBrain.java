@@ -0,0 +1,231 @@
+// BeamBrain.java
+
+package tetris;
+
+/**
+ A LookaheadBrain that plays the current piece and the preview
+ pieces with a beam search.
+
+ Each ply plays one piece. For ply 0 every DefaultBrain play of
+ the current piece is rated with rateMove(), and only the
+ beamWidth best boards are kept. Each following ply plays the next
+ preview piece on every kept board and again keeps only the
+ beamWidth best of all the results. The answer is the first move
+ that led to the best board at the deepest ply reached. If no board
+ survives a ply, the best of the ply before is used.
+
+ So a ply costs at most beamWidth times the work of one
+ DefaultBrain.bestMove(), whatever the depth, and the boards for
+ the beam are allocated once and reused. Ties go to the play found
+ first, so results are deterministic. With no preview this plays
+ exactly like DefaultBrain. Not thread safe -- use one per thread.
+*/
+public class BeamBrain extends DefaultBrain implements LookaheadBrain {
+    private final int depth;        // most plies searched, including this piece
+    private final int beamWidth;    // boards kept per ply
+
+    // Boards kept from the last ply, and the ones being built
+    private Board[] beam;
+    private Board[] nextBeam;
+    private int beamSize;
+
+    // First move that led to each beam board
+    private Piece[] firstPiece;
+    private int[] firstX;
+    private int[] firstY;
+
+    // The best plays of this ply, sorted by score, best first
+    private int[] candParent;
+    private Piece[] candPiece;
+    private int[] candX;
+    private int[] candY;
+    private double[] candScore;
+    private int candCount;
+
+    /**
+     Creates a brain that searches 3 plies keeping 8 boards per ply.
+    */
+    public BeamBrain() {
+        this(3, 8);
+    }
+
+    /**
+     Creates a brain that searches up to depth plies (1 is greedy),
+     keeping beamWidth boards per ply.
+    */
+    public BeamBrain(int depth, int beamWidth) {
+        if (depth < 1 || beamWidth < 1) throw new RuntimeException("Bad beam size");
+        this.depth = depth;
+        this.beamWidth = beamWidth;
+
+        firstPiece = new Piece[beamWidth];
+        firstX = new int[beamWidth];
+        firstY = new int[beamWidth];
+        candParent = new int[beamWidth];
+        candPiece = new Piece[beamWidth];
+        candX = new int[beamWidth];
+        candY = new int[beamWidth];
+        candScore = new double[beamWidth];
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, Piece[] preview, int limitHeight, Brain.Move move) {
+        // Allocate a move object if necessary
+        if (move==null) move = new Brain.Move();
+
+        board.commit();
+        makeBoards(board);
+
+        int plies = depth;
+        if (preview == null) plies = 1;
+        else if (preview.length + 1 < plies) plies = preview.length + 1;
+
+        Piece bestPiece = null;
+        int bestX = 0;
+        int bestY = 0;
+        double bestScore = 0;
+
+        for (int ply = 0; ply<plies; ply++) {
+            // Play this ply's piece on every board in the beam
+            candCount = 0;
+            if (ply == 0) {
+                expand(board, -1, piece, limitHeight);
+            }
+            else {
+                for (int i = 0; i<beamSize; i++) {
+                    expand(beam[i], i, preview[ply-1], limitHeight);
+                }
+            }
+            if (candCount == 0) break;    // nothing survives, go with the last ply
+
+            // Build the boards for the best plays
+            for (int i = 0; i<candCount; i++) {
+                int parent = candParent[i];
+                Board next = nextBeam[i];
+                next.copyFrom(parent < 0 ? board : beam[parent]);
+                next.place(candPiece[i], candX[i], candY[i]);
+                next.clearRows();
+                next.commit();
+            }
+            // Remember the first move that led to each new board
+            if (ply == 0) {
+                for (int i = 0; i<candCount; i++) {
+                    firstPiece[i] = candPiece[i];
+                    firstX[i] = candX[i];
+                    firstY[i] = candY[i];
+                }
+            }
+            else remapFirstMoves();
+
+            Board[] temp = beam;
+            beam = nextBeam;
+            nextBeam = temp;
+            beamSize = candCount;
+
+            bestPiece = firstPiece[0];
+            bestX = firstX[0];
+            bestY = firstY[0];
+            bestScore = candScore[0];
+        }
+
+        if (bestPiece == null) return(null);    // could not find a play at all!
+        else {
+            move.x = bestX;
+            move.y = bestY;
+            move.piece = bestPiece;
+            move.score = bestScore;
+            return(move);
+        }
+    }
+
+    // Scratch copies of the first moves for remapFirstMoves()
+    private Piece[] tempPiece;
+    private int[] tempX;
+    private int[] tempY;
+
+    /*
+     After a deeper ply, the first move of new beam board i is the
+     first move of its parent in the old beam.
+    */
+    private void remapFirstMoves() {
+        if (tempPiece == null) {
+            tempPiece = new Piece[beamWidth];
+            tempX = new int[beamWidth];
+            tempY = new int[beamWidth];
+        }
+        System.arraycopy(firstPiece, 0, tempPiece, 0, beamSize);
+        System.arraycopy(firstX, 0, tempX, 0, beamSize);
+        System.arraycopy(firstY, 0, tempY, 0, beamSize);
+        for (int i = 0; i<candCount; i++) {
+            int parent = candParent[i];
+            firstPiece[i] = tempPiece[parent];
+            firstX[i] = tempX[parent];
+            firstY[i] = tempY[parent];
+        }
+    }
+
+    /*
+     Tries every play of the piece on the board, the same plays
+     DefaultBrain tries, offering each to the candidate list.
+    */
+    private void expand(Board board, int parent, Piece piece, int limitHeight) {
+        Piece current = piece;
+        do {
+            final int yBound = limitHeight - current.getHeight()+1;
+            final int xBound = board.getWidth() - current.getWidth()+1;
+
+            for (int x = 0; x<xBound; x++) {
+                int y = board.dropHeight(current, x);
+                if (y<yBound) {    // piece does not stick up too far
+                    int result = board.place(current, x, y);
+                    if (result <= Board.PLACE_ROW_FILLED) {
+                        if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+                        offer(parent, current, x, y, rateMove(board, current, x, y));
+                    }
+                    board.undo();
+                }
+            }
+            current = current.fastRotation();
+        } while (current != null && current != piece);
+    }
+
+    /*
+     Inserts the play into the sorted candidate list if it is
+     among the beamWidth best so far. Equal scores go after the
+     ones already there, so earlier plays win ties.
+    */
+    private void offer(int parent, Piece piece, int x, int y, double score) {
+        if (candCount == beamWidth && score >= candScore[candCount-1]) return;
+
+        int i = (candCount < beamWidth) ? candCount++ : candCount-1;
+        while (i > 0 && candScore[i-1] > score) {
+            candParent[i] = candParent[i-1];
+            candPiece[i] = candPiece[i-1];
+            candX[i] = candX[i-1];
+            candY[i] = candY[i-1];
+            candScore[i] = candScore[i-1];
+            i--;
+        }
+        candParent[i] = parent;
+        candPiece[i] = piece;
+        candX[i] = x;
+        candY[i] = y;
+        candScore[i] = score;
+    }
+
+    /*
+     Allocates the beam boards the first time, or when the board
+     size changes.
+    */
+    private void makeBoards(Board board) {
+        if (beam == null || beam[0].getWidth() != board.getWidth()
+                || beam[0].getHeight() != board.getHeight()) {
+            beam = new Board[beamWidth];
+            nextBeam = new Board[beamWidth];
+            for (int i = 0; i<beamWidth; i++) {
+                beam[i] = new Board(board.getWidth(), board.getHeight());
+                nextBeam[i] = new Board(board.getWidth(), board.getHeight());
+            }
+        }
+        beamSize = 0;
+    }
+}
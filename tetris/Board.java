@@ -1,65 +1,218 @@
 // Board.java
 package tetris;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * CS108 Tetris Board. Represents a Tetris board -- essentially a 2-d grid of
- * booleans. Supports tetris pieces and row clearing. Has an "undo" feature that
- * allows clients to add and remove pieces efficiently. Does not do any drawing
+ * booleans, stored as one bitmask per row. Supports tetris pieces and row
+ * clearing. Has an "undo" feature that allows clients to add and remove pieces
+ * efficiently -- changes since the last commit() are journaled, so undo costs
+ * only what was changed, not the size of the board. Does not do any drawing
  * or have any idea of pixels. Instead, just represents the abstract 2-d board.
  */
 public class Board {
 	// Some ivars are stubbed out for you:
 	private int width;
 	private int height;
-	private boolean[][] grid;
-	private boolean DEBUG = true;
 	boolean committed;
 
-	private int widths[];
+	// The grid is stored one machine word per row -- bit x of rows[y]
+	// is set if the block at (x, y) is filled. A row is full when it
+	// equals fullRow.
+	private long[] rows;
+	private long fullRow;
+
+	// Zobrist hash of the filled cells, kept up to date by every row change
+	private long hash;
+
+	// Features for rating the board, kept up to date by every row and
+	// height change. A column's holes are its empty cells below its top
+	// block, i.e. heights[col] - counts[col].
+	private int[] counts;		// filled cells in each column
+	private int sumHeight;		// sum of the column heights
+	private int filled;			// filled cells in the whole board
+
 	private int heights[];
 	int maxHeight = 0;
 
-	private int xWidths[];
-	private int xHeights[];
-	int xMaxHeight = 0;
+	// Undo journal -- every change place() and clearRows() make is recorded
+	// here as (where, old value) so undo() can replay it backwards. A where
+	// >= 0 is a row index, ~col is a column height, MAX_HEIGHT_ENTRY is
+	// maxHeight and DIRTY_ENTRY is the packed dirty row range.
+	private int[] journalWhere;
+	private long[] journalOld;
+	private int journalSize;
+	private static final int MAX_HEIGHT_ENTRY = Integer.MIN_VALUE;
+	private static final int DIRTY_ENTRY = Integer.MIN_VALUE + 1;
+
+	// Rows [dirtyLow, dirtyHigh) touched by place() since the last
+	// clearRows() -- only these can be full, so clearRows() looks no further.
+	// Empty when dirtyLow >= dirtyHigh.
+	private int dirtyLow;
+	private int dirtyHigh;
+
+	// Journal size at the last commit -- undo() rolls back to here
+	private int undoBase;
+
+	// Journal size at each live mark(), innermost last
+	private int[] markSizes;
+	private int markDepth;
 
-	private boolean[][] xGrid;
+	// Max board width, one bit per column in a long
+	public static final int MAX_WIDTH = 64;
 
 	// Here a few trivial methods are provided:
 
 	/**
 	 * Creates an empty board of the given width and height measured in blocks.
+	 * The width may be at most MAX_WIDTH.
 	 */
 	public Board(int width, int height) {
+		if (width < 1 || width > MAX_WIDTH)
+			throw new RuntimeException("Bad board width:" + width);
 		this.width = width;
 		this.height = height;
-		grid = new boolean[width][height];
-		xGrid = new boolean[width][height];
+		rows = new long[height];
+		fullRow = (width == MAX_WIDTH) ? -1L : (1L << width) - 1;
 		committed = true;
 
-		widths = new int[height];
 		heights = new int[width];
-		xWidths = new int[height];
-		xHeights = new int[width];
+		counts = new int[width];
 
-		
-		maxHeight = xMaxHeight = 0;
+		// Room for a clearRows() that touches every row and column
+		int capacity = 2 * (height + width + 1);
+		journalWhere = new int[capacity];
+		journalOld = new long[capacity];
+		journalSize = undoBase = 0;
 
-		doBackup();
+		markSizes = new int[8];
+		markDepth = 0;
+
+		dirtyLow = height;
+		dirtyHigh = 0;
 	}
 
 	/**
-	 * Backup date before change the board status, use for undo()
+	 * Creates a board with the same size and blocks as the given board, for
+	 * example to give each thread its own board to search on. The copy starts out
+	 * committed, with nothing to undo and no marks.
 	 */
-	private void doBackup() {
-		System.arraycopy(widths, 0, xWidths, 0, height);
-		System.arraycopy(heights, 0, xHeights, 0, width);
-		xMaxHeight = maxHeight;
-		// Copy grid
-		for (int col = 0; col < width; col++) {
-			System.arraycopy(grid[col], 0, xGrid[col], 0, height);
+	public Board(Board other) {
+		this(other.width, other.height);
+		copyFrom(other);
+	}
+
+	/**
+	 * Makes this board a copy of the other board, which must be the same size.
+	 * Lets search code reuse boards instead of allocating new ones. Leaves this
+	 * board committed, with nothing to undo and no marks.
+	 */
+	public void copyFrom(Board other) {
+		if (other.width != width || other.height != height)
+			throw new RuntimeException("copyFrom size problem");
+		System.arraycopy(other.rows, 0, rows, 0, height);
+		System.arraycopy(other.heights, 0, heights, 0, width);
+		System.arraycopy(other.counts, 0, counts, 0, width);
+		maxHeight = other.maxHeight;
+		hash = other.hash;
+		sumHeight = other.sumHeight;
+		filled = other.filled;
+		dirtyLow = other.dirtyLow;
+		dirtyHigh = other.dirtyHigh;
+		journalSize = undoBase = 0;
+		markDepth = 0;
+		committed = true;
+	}
+
+	/*
+	 * Change helpers -- each records the old value in the journal before
+	 * writing the new one. All changes to rows, heights and maxHeight after
+	 * construction go through these.
+	 */
+	private void setRow(int y, long value) {
+		record(y, rows[y]);
+		rowChanged(y, rows[y], value);
+		rows[y] = value;
+	}
+
+	private void setHeight(int col, int value) {
+		record(~col, heights[col]);
+		sumHeight += value - heights[col];
+		heights[col] = value;
+	}
+
+	/*
+	 * Updates the hash and the column counts for row y changing from
+	 * oldBits to newBits.
+	 */
+	private void rowChanged(int y, long oldBits, long newBits) {
+		hash ^= Zobrist.rowKey(y, oldBits ^ newBits);
+		filled += Long.bitCount(newBits) - Long.bitCount(oldBits);
+
+		long added = newBits & ~oldBits;
+		while (added != 0) {
+			counts[Long.numberOfTrailingZeros(added)]++;
+			added &= added - 1;
+		}
+		long removed = oldBits & ~newBits;
+		while (removed != 0) {
+			counts[Long.numberOfTrailingZeros(removed)]--;
+			removed &= removed - 1;
+		}
+	}
+
+	private void setMaxHeight(int value) {
+		record(MAX_HEIGHT_ENTRY, maxHeight);
+		maxHeight = value;
+	}
+
+	private void setDirty(int low, int high) {
+		record(DIRTY_ENTRY, (long) dirtyLow << 32 | dirtyHigh);
+		dirtyLow = low;
+		dirtyHigh = high;
+	}
+
+	/*
+	 * Number of undo journal entries held, so tests can check what an
+	 * operation records.
+	 */
+	int getJournalSize() {
+		return journalSize;
+	}
+
+	private void record(int where, long old) {
+		if (journalSize == journalWhere.length) {
+			journalWhere = Arrays.copyOf(journalWhere, 2 * journalSize);
+			journalOld = Arrays.copyOf(journalOld, 2 * journalSize);
+		}
+		journalWhere[journalSize] = where;
+		journalOld[journalSize] = old;
+		journalSize++;
+	}
+
+	/*
+	 * Replays the journal backwards, restoring old values,
+	 * until only the first "size" entries are left.
+	 */
+	private void rollbackJournal(int size) {
+		while (journalSize > size) {
+			journalSize--;
+			int where = journalWhere[journalSize];
+			long old = journalOld[journalSize];
+			if (where >= 0) {
+				rowChanged(where, rows[where], old);
+				rows[where] = old;
+			} else if (where == MAX_HEIGHT_ENTRY) {
+				maxHeight = (int) old;
+			} else if (where == DIRTY_ENTRY) {
+				dirtyLow = (int) (old >>> 32);
+				dirtyHigh = (int) old;
+			} else {
+				sumHeight += (int) old - heights[~where];
+				heights[~where] = (int) old;
+			}
 		}
 	}
 
@@ -86,36 +239,56 @@ public class Board {
 	}
 
 	/**
-	 * Checks the board for internal consistency -- used for debugging.
+	 * Checks the board for internal consistency -- used for debugging. Throws a
+	 * RuntimeException describing the first problem found. This is a full
+	 * O(width*height) scan, so the board never calls it itself; see
+	 * VerifyingBoard for running it after every operation.
 	 */
 	public void sanityCheck() {
-		if (DEBUG) {
-			int[] tmpWidths = new int[height];
-			int[] tmpHeights = new int[width];
-			int tmpMaxHeight = 0;
-
+		int[] tmpHeights = new int[width];
+		int[] tmpCounts = new int[width];
+		int tmpMaxHeight = 0;
+		long tmpHash = 0;
+
+		for (int row = 0; row < height; row++) {
+			tmpHash ^= Zobrist.rowKey(row, rows[row]);
+			if ((rows[row] & ~fullRow) != 0) {
+				throw new RuntimeException("Problem with row " + row);
+			}
+			if (rows[row] == fullRow && (row < dirtyLow || row >= dirtyHigh)) {
+				throw new RuntimeException("Problem with dirty rows, " + row + " is full");
+			}
 			for (int col = 0; col < width; col++) {
-				for (int row = 0; row < height; row++) {
-					if (grid[col][row]) {
-						tmpWidths[row]++;
-						tmpHeights[col] = row + 1;
-						if (tmpHeights[col] > tmpMaxHeight) {
-							tmpMaxHeight = tmpHeights[col];
-						}
+				if ((rows[row] >>> col & 1) != 0) {
+					tmpCounts[col]++;
+					tmpHeights[col] = row + 1;
+					if (tmpHeights[col] > tmpMaxHeight) {
+						tmpMaxHeight = tmpHeights[col];
 					}
 				}
 			}
+		}
 
-			if (!Arrays.equals(widths, tmpWidths)) {
-				throw new RuntimeException("Problem with widths");
-			}
-
-			if (!Arrays.equals(heights, tmpHeights)) {
-				throw new RuntimeException("Problem with heights");
-			}
-			if (tmpMaxHeight != maxHeight) {
-				throw new RuntimeException("Problem with maxHeight");
-			}
+		if (!Arrays.equals(heights, tmpHeights)) {
+			throw new RuntimeException("Problem with heights");
+		}
+		if (tmpMaxHeight != maxHeight) {
+			throw new RuntimeException("Problem with maxHeight");
+		}
+		if (tmpHash != hash) {
+			throw new RuntimeException("Problem with hash");
+		}
+		if (!Arrays.equals(counts, tmpCounts)) {
+			throw new RuntimeException("Problem with column counts");
+		}
+		int tmpSumHeight = 0;
+		int tmpFilled = 0;
+		for (int col = 0; col < width; col++) {
+			tmpSumHeight += tmpHeights[col];
+			tmpFilled += tmpCounts[col];
+		}
+		if (tmpSumHeight != sumHeight || tmpFilled != filled) {
+			throw new RuntimeException("Problem with sumHeight");
 		}
 	}
 
@@ -148,11 +321,36 @@ public class Board {
 		return heights[x]; // YOUR CODE HERE
 	}
 
+	/**
+	 * Returns the number of holes in the given column -- empty blocks below the
+	 * column's highest filled block.
+	 */
+	public int getColumnHoles(int x) {
+		return heights[x] - counts[x];
+	}
+
+	/**
+	 * Returns the total number of holes in the board, the sum of
+	 * getColumnHoles() over all columns. O(1), kept up to date as the board
+	 * changes.
+	 */
+	public int getHoles() {
+		return sumHeight - filled;
+	}
+
+	/**
+	 * Returns the sum of all the column heights. O(1), kept up to date as the
+	 * board changes.
+	 */
+	public int getSumHeight() {
+		return sumHeight;
+	}
+
 	/**
 	 * Returns the number of filled blocks in the given row.
 	 */
 	public int getRowWidth(int y) {
-		return widths[y]; // YOUR CODE HERE
+		return Long.bitCount(rows[y]);
 	}
 
 	/**
@@ -160,7 +358,16 @@ public class Board {
 	 * valid width/height area always return true.
 	 */
 	public boolean getGrid(int x, int y) {
-		return grid[x][y]; // YOUR CODE HERE
+		if (isOutOfBounds(x, y))
+			return true;
+		return (rows[y] >>> x & 1) != 0;
+	}
+
+	/**
+	 * Returns the bitmask for the given row -- bit x is set if (x, y) is filled.
+	 */
+	long getRowBits(int y) {
+		return rows[y];
 	}
 
 	private boolean isOutOfBounds(int x, int y) {
@@ -169,6 +376,24 @@ public class Board {
 		return false;
 	}
 
+	/**
+	 * Returns true if the piece could be placed at x,y -- it is in bounds and
+	 * does not overlap any blocks. Does not change the board, so it may be called
+	 * in any state.
+	 */
+	public boolean canPlace(Piece piece, int x, int y) {
+		if (x < 0 || y < 0 || x + piece.getWidth() > width || y + piece.getHeight() > height) {
+			return false;
+		}
+		int[] masks = piece.getRowMasks();
+		for (int i = 0; i < masks.length; i++) {
+			if ((rows[y + i] & ((long) masks[i] << x)) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public static final int PLACE_OK = 0;
 	public static final int PLACE_ROW_FILLED = 1;
 	public static final int PLACE_OUT_BOUNDS = 2;
@@ -194,47 +419,45 @@ public class Board {
 			throw new RuntimeException("place commit problem");
 		committed = false;
 
-		int result = PLACE_OK;
-		doBackup();
-		TPoint[] body = piece.getBody();
-
-		for (int i = 0; i < body.length; i++) {
-			TPoint currPoint = body[i];
-			// Error case 1 - Out of bounds
-			if (isOutOfBounds(x + currPoint.x, y + currPoint.y)) {
-				return PLACE_OUT_BOUNDS;
-			}
+		// Error case 1 - Out of bounds, the piece's bounding box must fit
+		if (x < 0 || y < 0 || x + piece.getWidth() > width || y + piece.getHeight() > height) {
+			return PLACE_OUT_BOUNDS;
+		}
 
-			// Error case 2 - Overlap
-			if (grid[x + currPoint.x][y + currPoint.y]) {
+		// Error case 2 - Overlap, AND each shifted row mask against the board
+		int[] masks = piece.getRowMasks();
+		for (int i = 0; i < masks.length; i++) {
+			if ((rows[y + i] & ((long) masks[i] << x)) != 0) {
 				return PLACE_BAD;
-
 			}
+		}
 
-			updateVariables(x + currPoint.x, y + currPoint.y);
-
-			if (widths[y + currPoint.y] == width) {
+		int result = PLACE_OK;
+		for (int i = 0; i < masks.length; i++) {
+			setRow(y + i, rows[y + i] | (long) masks[i] << x);
+			if (rows[y + i] == fullRow) {
 				result = PLACE_ROW_FILLED;
 			}
-			grid[x + currPoint.x][y + currPoint.y] = true;
-
 		}
 
-		sanityCheck();
-		return result;
-	}
-
-	/*
-	 * This method updates variables - widths, heights and maxHeight
-	 */
-	private void updateVariables(int a, int b) {
-		if (b + 1 > heights[a]) {
-			heights[a] = b + 1;
-			if (heights[a] > maxHeight) {
-				maxHeight = heights[a];
+		// Update heights and maxHeight from the piece's tops
+		int[] tops = piece.getTops();
+		for (int i = 0; i < tops.length; i++) {
+			if (y + tops[i] > heights[x + i]) {
+				setHeight(x + i, y + tops[i]);
+				if (heights[x + i] > maxHeight) {
+					setMaxHeight(heights[x + i]);
+				}
 			}
 		}
-		widths[b]++;
+
+		// Widen the dirty range to cover the rows this piece touched
+		int top = y + masks.length;
+		if (y < dirtyLow || top > dirtyHigh) {
+			setDirty(Math.min(y, dirtyLow), Math.max(top, dirtyHigh));
+		}
+
+		return result;
 	}
 
 	/**
@@ -242,49 +465,59 @@ public class Board {
 	 * Returns the number of rows cleared.
 	 */
 	public int clearRows() {
-		int rowsCleared = 0;
 		committed = false;
-		int to = 0;
-		for (int from = 0; from < height; from++) {
+		// Find the first full row -- only rows place() touched can be full
+		int first = dirtyLow;
+		int end = Math.min(dirtyHigh, maxHeight);
+		while (first < end && rows[first] != fullRow) {
+			first++;
+		}
+		if (dirtyLow < dirtyHigh) {
+			setDirty(height, 0);
+		}
+		if (first >= end) {
+			return 0;
+		}
+
+		// Rows below the first full row stay put, shift the ones above down
+		int to = first;
+		for (int from = first + 1; from < maxHeight; from++) {
 			/*
 			 * if row isn't filled copy "from" row to "to" row
 			 */
-			if (widths[from] != width) {
-				// Copy
-				for (int i = 0; i < width; i++) {
-					grid[i][to] = grid[i][from];
+			if (rows[from] != fullRow) {
+				if (rows[to] != rows[from]) {
+					setRow(to, rows[from]);
 				}
-				widths[to] = widths[from];
 				to++;
-			} else {
-				rowsCleared++;
 			}
 		}
+		int rowsCleared = maxHeight - to;
 
-		// Fill the removed rows with false grid
-		for (int start = to; to < maxHeight; to++) {
-			for (int g = 0; g < width; g++) {
-				grid[g][start] = false;
-			}
-			widths[start] = 0;
+		// Fill the removed rows with empty rows
+		for (int row = to; row < maxHeight; row++) {
+			setRow(row, 0);
 		}
 
-		// Update heights
+		// Update heights and maxHeight, columns no taller than the first
+		// cleared row are not affected
+		int newMaxHeight = 0;
 		for (int col = 0; col < width; col++) {
-			for (int row = heights[col]; row >= 0; row--) {
-				if (grid[col][row]) {
-					heights[col] = row + 1;
-					break;
-				} else {
-					heights[col] = 0;
+			if (heights[col] > first) {
+				int row = Math.min(heights[col], to) - 1;
+				while (row >= 0 && (rows[row] >>> col & 1) == 0) {
+					row--;
+				}
+				if (heights[col] != row + 1) {
+					setHeight(col, row + 1);
 				}
 			}
+			if (heights[col] > newMaxHeight) {
+				newMaxHeight = heights[col];
+			}
 		}
+		setMaxHeight(newMaxHeight);
 
-		// Udpate maxHeight
-		maxHeight = maxHeight - rowsCleared;
-
-		sanityCheck();
 		return rowsCleared;
 	}
 
@@ -295,19 +528,7 @@ public class Board {
 	 */
 	public void undo() {
 		if (!committed) {
-			int[] widthTemp = widths;
-			widths = xWidths;
-			xWidths = widthTemp;
-
-			int[] heightTemp = heights;
-			heights = xHeights;
-			xHeights = heightTemp;
-
-			maxHeight = xMaxHeight;
-
-			boolean[][] tmpGrid = grid;
-			grid = xGrid;
-			xGrid = tmpGrid;
+			rollbackJournal(undoBase);
 		}
 		committed = true;
 	}
@@ -317,6 +538,204 @@ public class Board {
 	 */
 	public void commit() {
 		committed = true;
+		// With no live marks nobody can roll back past here
+		if (markDepth == 0) {
+			journalSize = 0;
+		}
+		undoBase = journalSize;
+	}
+
+	/**
+	 * Records a checkpoint of the current committed board state and returns a
+	 * handle for it. Any number of place(), clearRows() and commit() calls may
+	 * follow, including nested mark()s, and rollbackTo() with the handle puts the
+	 * board back exactly as it was here. Marks nest like a stack, e.g. for a
+	 * lookahead search:
+	 * 
+	 * <pre>
+	 * int mark = board.mark();
+	 * board.place(piece, x, y);
+	 * board.clearRows();
+	 * board.commit();
+	 * search(board, depth + 1); // may mark/rollback itself
+	 * board.rollbackTo(mark);
+	 * </pre>
+	 * 
+	 * The journal and mark buffers are reused, so once they have grown to the
+	 * search depth no further memory is allocated.
+	 */
+	public int mark() {
+		if (!committed)
+			throw new RuntimeException("mark commit problem");
+		if (markDepth == markSizes.length) {
+			markSizes = Arrays.copyOf(markSizes, 2 * markDepth);
+		}
+		markSizes[markDepth] = journalSize;
+		return markDepth++;
+	}
+
+	/**
+	 * Reverts the board to the state it was in when the given mark was made,
+	 * leaving it committed. The mark and any marks made after it are released.
+	 */
+	public void rollbackTo(int mark) {
+		if (mark < 0 || mark >= markDepth)
+			throw new RuntimeException("rollbackTo bad mark:" + mark);
+		rollbackJournal(markSizes[mark]);
+		markDepth = mark;
+		committed = true;
+		undoBase = journalSize;
+	}
+
+	/**
+	 * Returns the 64-bit Zobrist hash of the filled cells. It is kept up to date
+	 * by place(), clearRows(), undo() and rollbackTo(), so reading it is O(1).
+	 * Boards with the same blocks have the same hash, whatever their history.
+	 */
+	public long getZobristHash() {
+		return hash;
+	}
+
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Returns true if the other board has the same size and the same blocks
+	 * filled. Compares one word per occupied row.
+	 */
+	public boolean equals(Object obj) {
+		// standard equals() technique 1
+		if (obj == this) return true;
+
+		// standard equals() technique 2
+		// (null will be false)
+		if (!(obj instanceof Board)) return false;
+		Board other = (Board) obj;
+
+		if (width != other.width || height != other.height) return false;
+		if (hash != other.hash || maxHeight != other.maxHeight) return false;
+
+		// Rows at or above maxHeight are empty in both
+		for (int row = 0; row < maxHeight; row++) {
+			if (rows[row] != other.rows[row]) return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Binary form, for storing and shipping many positions:
+	 *   byte       width
+	 *   byte       height
+	 *   byte[width] column heights
+	 *   rows 0 .. maxHeight-1, each (width+7)/8 bytes, low columns first
+	 * Rows at or above maxHeight are empty and not written, so the size
+	 * is 2 + width + maxHeight * ((width + 7) / 8) bytes. Boards taller
+	 * than MAX_ENCODED_HEIGHT can't be encoded.
+	 */
+	public static final int MAX_ENCODED_HEIGHT = 255;
+
+	/**
+	 * Returns the number of bytes encode() will write for the board as it is now.
+	 */
+	public int encodedSize() {
+		return 2 + width + maxHeight * ((width + 7) / 8);
+	}
+
+	/**
+	 * Writes the binary form of the board to the buffer at its position,
+	 * advancing the position. Does not allocate. The buffer must have
+	 * encodedSize() bytes remaining.
+	 */
+	public void encode(ByteBuffer buf) {
+		if (height > MAX_ENCODED_HEIGHT)
+			throw new RuntimeException("Board too tall to encode:" + height);
+		buf.put((byte) width);
+		buf.put((byte) height);
+		for (int col = 0; col < width; col++) {
+			buf.put((byte) heights[col]);
+		}
+		int rowBytes = (width + 7) / 8;
+		for (int row = 0; row < maxHeight; row++) {
+			long bits = rows[row];
+			for (int i = 0; i < rowBytes; i++) {
+				buf.put((byte) bits);
+				bits >>>= 8;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the contents of this board with a board read from the buffer at
+	 * its position, advancing the position. The encoded board must have the same
+	 * width and height as this one. Does not allocate. The board is left
+	 * committed, with any undo or marks discarded. A bad encoding throws a
+	 * RuntimeException and leaves the board contents undefined.
+	 */
+	public void decode(ByteBuffer buf) {
+		int w = buf.get() & 0xFF;
+		int h = buf.get() & 0xFF;
+		if (w != width || h != height)
+			throw new RuntimeException("Bad board encoding size:" + w + "x" + h);
+
+		int newMaxHeight = 0;
+		sumHeight = 0;
+		for (int col = 0; col < width; col++) {
+			heights[col] = buf.get() & 0xFF;
+			sumHeight += heights[col];
+			if (heights[col] > height)
+				throw new RuntimeException("Bad board encoding height:" + heights[col]);
+			newMaxHeight = Math.max(newMaxHeight, heights[col]);
+		}
+
+		int rowBytes = (width + 7) / 8;
+		hash = 0;
+		filled = 0;
+		Arrays.fill(counts, 0);
+		for (int row = 0; row < newMaxHeight; row++) {
+			long bits = 0;
+			for (int i = 0; i < rowBytes; i++) {
+				bits |= (buf.get() & 0xFFL) << (8 * i);
+			}
+			if ((bits & ~fullRow) != 0)
+				throw new RuntimeException("Bad board encoding row:" + row);
+			rows[row] = 0;
+			rowChanged(row, 0, bits);
+			rows[row] = bits;
+		}
+		for (int row = newMaxHeight; row < maxHeight; row++) {
+			rows[row] = 0;
+		}
+		maxHeight = newMaxHeight;
+
+		// Check the column heights against the rows, top down
+		long seen = 0;
+		for (int row = maxHeight - 1; row >= 0; row--) {
+			long tops = rows[row] & ~seen;
+			seen |= tops;
+			while (tops != 0) {
+				if (heights[Long.numberOfTrailingZeros(tops)] != row + 1)
+					throw new RuntimeException("Bad board encoding heights");
+				tops &= tops - 1;
+			}
+		}
+		if (Long.bitCount(seen) != countNonEmptyColumns())
+			throw new RuntimeException("Bad board encoding heights");
+
+		// Any row may be full in a snapshot
+		dirtyLow = 0;
+		dirtyHigh = maxHeight;
+		journalSize = undoBase = 0;
+		markDepth = 0;
+		committed = true;
+	}
+
+	private int countNonEmptyColumns() {
+		int count = 0;
+		for (int col = 0; col < width; col++) {
+			if (heights[col] > 0) count++;
+		}
+		return count;
 	}
 
 	/*
@@ -0,0 +1,119 @@
+// BoardFeatures.java
+package tetris;
+
+/**
+ Computes a vector of features describing a board, for brains
+ that rate boards as a weighted sum of features. Everything is
+ found in one pass over the occupied row bitmasks and one over the
+ column heights, into an array that is reused from call to call.
+
+ The features, by index:
+ <pre>
+ MAX_HEIGHT          tallest column
+ AVG_HEIGHT          average column height
+ HOLES               empty blocks below the top of their column
+ BUMPINESS           sum of height differences of neighboring columns
+ WELL_DEPTH          sum over columns of how far each sits below
+                     its lower neighbor (a wall is no neighbor)
+ ROW_TRANSITIONS     filled/empty changes along each row below
+                     MAX_HEIGHT, the walls counting as filled
+ COLUMN_TRANSITIONS  filled/empty changes up each column, the floor
+                     counting as filled
+ COVERED_CELLS       filled blocks with a hole somewhere below them
+ LANDING_HEIGHT      height of the middle of the last piece played
+ </pre>
+ Not thread safe -- use one per thread.
+*/
+public class BoardFeatures {
+	public static final int MAX_HEIGHT = 0;
+	public static final int AVG_HEIGHT = 1;
+	public static final int HOLES = 2;
+	public static final int BUMPINESS = 3;
+	public static final int WELL_DEPTH = 4;
+	public static final int ROW_TRANSITIONS = 5;
+	public static final int COLUMN_TRANSITIONS = 6;
+	public static final int COVERED_CELLS = 7;
+	public static final int LANDING_HEIGHT = 8;
+
+	// Number of features
+	public static final int COUNT = 9;
+
+	private final double[] features = new double[COUNT];
+
+	/**
+	 Computes the features of the board into the array returned,
+	 which is reused by the next call. landingHeight is the y of
+	 the middle of the last piece played, see landingHeight().
+	*/
+	public double[] compute(Board board, double landingHeight) {
+		final int width = board.getWidth();
+		final int maxHeight = board.getMaxHeight();
+		final long fullRow = (width == Board.MAX_WIDTH) ? -1L : (1L << width) - 1;
+
+		// Row pass -- row and column transitions, covered cells
+		int rowTransitions = 0;
+		int columnTransitions = 0;
+		int covered = 0;
+		long below = fullRow;	// the floor counts as filled
+		long holeBelow = 0;		// columns with an empty block below this row
+		for (int y = 0; y < maxHeight; y++) {
+			long row = board.getRowBits(y);
+
+			// inside the row, then against the two walls
+			rowTransitions += Long.bitCount((row ^ (row >>> 1)) & (fullRow >>> 1));
+			if ((row & 1) == 0) rowTransitions++;
+			if ((row >>> (width - 1) & 1) == 0) rowTransitions++;
+
+			columnTransitions += Long.bitCount(row ^ below);
+			covered += Long.bitCount(row & holeBelow);
+			holeBelow |= ~row & fullRow;
+			below = row;
+		}
+		// from the top blocks into the empty space above
+		columnTransitions += Long.bitCount(below);
+
+		// Column pass -- bumpiness and wells
+		int bumpiness = 0;
+		int wells = 0;
+		for (int x = 0; x < width; x++) {
+			int h = board.getColumnHeight(x);
+			int left = (x == 0) ? -1 : board.getColumnHeight(x - 1);
+			int right = (x == width - 1) ? -1 : board.getColumnHeight(x + 1);
+			if (left >= 0) bumpiness += Math.abs(h - left);
+
+			// walls (-1) don't limit the well
+			int rim = (left < 0) ? right : (right < 0) ? left : Math.min(left, right);
+			if (rim > h) wells += rim - h;
+		}
+
+		features[MAX_HEIGHT] = maxHeight;
+		features[AVG_HEIGHT] = ((double) board.getSumHeight()) / width;
+		features[HOLES] = board.getHoles();
+		features[BUMPINESS] = bumpiness;
+		features[WELL_DEPTH] = wells;
+		features[ROW_TRANSITIONS] = rowTransitions;
+		features[COLUMN_TRANSITIONS] = columnTransitions;
+		features[COVERED_CELLS] = covered;
+		features[LANDING_HEIGHT] = landingHeight;
+		return features;
+	}
+
+	/**
+	 Returns the landing height for a piece played at y --
+	 the y of the middle of the piece.
+	*/
+	public static double landingHeight(Piece piece, int y) {
+		return y + (piece.getHeight() - 1) / 2.0;
+	}
+
+	/**
+	 Returns the dot product of the features and the weights.
+	*/
+	public static double score(double[] features, double[] weights) {
+		double score = 0;
+		for (int i = 0; i < COUNT; i++) {
+			score += features[i] * weights[i];
+		}
+		return score;
+	}
+}
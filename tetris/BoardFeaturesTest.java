@@ -0,0 +1,66 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class BoardFeaturesTest {
+	Board b;
+	Piece pyr1, s;
+	BoardFeatures features;
+
+	// A 4X6 board with pyr at the bottom left:
+	//  .X..
+	//  XXX.
+	@Before
+	public void setUp() throws Exception {
+		b = new Board(4, 6);
+		pyr1 = new Piece(Piece.PYRAMID_STR);
+		s = new Piece(Piece.S1_STR);
+		features = new BoardFeatures();
+		
+		b.place(pyr1, 0, 0);
+		b.commit();
+	}
+	
+	@Test
+	public void testPyramid() {
+		double[] f = features.compute(b, BoardFeatures.landingHeight(pyr1, 0));
+		assertEquals(2, f[BoardFeatures.MAX_HEIGHT], 0);
+		assertEquals(1.0, f[BoardFeatures.AVG_HEIGHT], 0);
+		assertEquals(0, f[BoardFeatures.HOLES], 0);
+		assertEquals(3, f[BoardFeatures.BUMPINESS], 0);
+		assertEquals(2, f[BoardFeatures.WELL_DEPTH], 0);
+		assertEquals(6, f[BoardFeatures.ROW_TRANSITIONS], 0);
+		assertEquals(4, f[BoardFeatures.COLUMN_TRANSITIONS], 0);
+		assertEquals(0, f[BoardFeatures.COVERED_CELLS], 0);
+		assertEquals(0.5, f[BoardFeatures.LANDING_HEIGHT], 0);
+	}
+	
+	// The s lands on the pyr tip, leaving holes under its right half
+	//  ..XX
+	//  .XX.
+	//  .X..
+	//  XXX.
+	@Test
+	public void testHoles() {
+		int y = b.dropHeight(s, 1);
+		assertEquals(2, y);
+		b.place(s, 1, y);
+		
+		double[] f = features.compute(b, BoardFeatures.landingHeight(s, y));
+		assertEquals(4, f[BoardFeatures.MAX_HEIGHT], 0);
+		assertEquals(4, f[BoardFeatures.HOLES], 0);
+		assertEquals(3, f[BoardFeatures.COVERED_CELLS], 0);
+		assertEquals(2.5, f[BoardFeatures.LANDING_HEIGHT], 0);
+	}
+	
+	@Test
+	public void testScore() {
+		double[] f = features.compute(b, 0);
+		assertEquals(8*2 + 40*1.0, BoardFeatures.score(f, WeightedBrain.DEFAULT_WEIGHTS), 1e-9);
+		
+		DefaultBrain brain = new DefaultBrain();
+		assertEquals(brain.rateBoard(b), new WeightedBrain().rateBoard(b), 1e-9);
+	}
+}
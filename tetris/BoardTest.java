@@ -2,6 +2,8 @@ package tetris;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+
 import org.junit.*;
 
 public class BoardTest {
@@ -13,10 +15,11 @@ public class BoardTest {
 	
 	// In this case, setUp() makes shapes,
 	// and also a 3X6 board, with pyr placed at the bottom,
-	// ready to be used by tests.
+	// ready to be used by tests. The board checks itself
+	// after every operation.
 	@Before
 	public void setUp() throws Exception {
-		b = new Board(3, 6);
+		b = new VerifyingBoard(3, 6);
 		
 		pyr1 = new Piece(Piece.PYRAMID_STR);
 		pyr2 = pyr1.computeNextRotation();
@@ -52,6 +55,310 @@ public class BoardTest {
 		assertEquals(4, b.getMaxHeight());
 	}
 	
+	// The pyramid fills row 0, clear it and check the stub left behind
+	@Test
+	public void testClearRows() {
+		assertEquals(1, b.clearRows());
+		assertEquals(0, b.getColumnHeight(0));
+		assertEquals(1, b.getColumnHeight(1));
+		assertEquals(0, b.getColumnHeight(2));
+		assertEquals(1, b.getMaxHeight());
+		assertEquals(1, b.getRowWidth(0));
+		assertTrue(b.getGrid(1, 0));
+		assertFalse(b.getGrid(0, 0));
+		
+		// Blocks outside the board count as filled
+		assertTrue(b.getGrid(-1, 0));
+		assertTrue(b.getGrid(3, 0));
+		assertTrue(b.getGrid(0, 6));
+	}
+	
+	// Out of bounds and overlapping placements leave the board undoable
+	@Test
+	public void testPlaceErrors() {
+		assertFalse(b.canPlace(pyr1, 1, 0));
+		assertFalse(b.canPlace(sRotated, 0, 0));
+		assertTrue(b.canPlace(sRotated, 0, 2));
+		b.commit();
+		assertEquals(Board.PLACE_OUT_BOUNDS, b.place(pyr1, 1, 0));
+		b.undo();
+		assertEquals(Board.PLACE_BAD, b.place(sRotated, 0, 0));
+		b.undo();
+		assertEquals(2, b.getMaxHeight());
+		assertEquals(3, b.getRowWidth(0));
+	}
+	
+	// undo() backs out both the clearRows() and the place() before it
+	@Test
+	public void testUndoClear() {
+		b.clearRows();
+		b.undo();
+		assertEquals(0, b.getMaxHeight());
+		assertEquals(0, b.getRowWidth(0));
+		assertEquals(0, b.getColumnHeight(1));
+		
+		// A second undo() does nothing
+		b.undo();
+		assertEquals(0, b.getMaxHeight());
+		
+		b.place(pyr1, 0, 0);
+		b.commit();
+		assertEquals(Board.PLACE_ROW_FILLED, b.place(pyr3, 0, 2));
+		assertEquals(2, b.clearRows());
+		assertEquals(2, b.getMaxHeight());
+		assertEquals(0, b.getColumnHeight(0));
+		b.undo();
+		assertEquals(3, b.getRowWidth(0));
+		assertEquals(2, b.getColumnHeight(1));
+		assertEquals(2, b.getMaxHeight());
+	}
+	
+	// Nested marks each roll back to their own state
+	@Test
+	public void testMarkRollback() {
+		b.commit();
+		int outer = b.mark();
+		b.place(pyr3, 0, 2);
+		assertEquals(2, b.clearRows());
+		b.commit();
+		
+		int inner = b.mark();
+		b.place(s, 0, 2);
+		b.commit();
+		assertEquals(4, b.getMaxHeight());
+		
+		b.rollbackTo(inner);
+		assertEquals(2, b.getMaxHeight());
+		assertEquals(0, b.getColumnHeight(0));
+		assertEquals(1, b.getRowWidth(0));
+		
+		b.rollbackTo(outer);
+		assertEquals(2, b.getMaxHeight());
+		assertEquals(3, b.getRowWidth(0));
+		assertEquals(1, b.getRowWidth(1));
+		assertEquals(0, b.getRowWidth(2));
+		
+		// Both marks are released now
+		try {
+			b.rollbackTo(inner);
+			fail();
+		} catch (RuntimeException expected) {
+		}
+	}
+	
+	// A sampled board checks every Nth operation only
+	@Test
+	public void testSampledVerify() {
+		VerifyingBoard v = new VerifyingBoard(3, 6, VerifyingBoard.VERIFY_SAMPLED, 2);
+		v.place(pyr1, 0, 0);
+		v.clearRows();
+		v.commit();
+		assertEquals(3, v.getOperationCount());
+		assertEquals(1, v.getCheckCount());
+		assertNull(v.getFailure());
+	}
+
+	// A fully verifying board names the operation that found it broken,
+	// and keeps that first failure
+	@Test
+	public void testFullVerifyFailure() {
+		VerifyingBoard v = new VerifyingBoard(3, 6);
+		v.place(pyr1, 0, 0);
+		v.commit();
+		assertNull(v.getFailure());
+
+		v.maxHeight = 5;
+		try {
+			v.place(new Piece("0 0"), 0, 1);
+			fail();
+		} catch (RuntimeException expected) {
+		}
+		assertEquals("operation 3 place(0, 1): Problem with maxHeight", v.getFailure());
+
+		try {
+			v.commit();
+			fail();
+		} catch (RuntimeException expected) {
+		}
+		assertEquals("operation 3 place(0, 1): Problem with maxHeight", v.getFailure());
+	}
+
+	// A sampled board catches the damage at its next check, within
+	// "every" operations, naming the range since the last good check
+	@Test
+	public void testSampledVerifyFailure() {
+		VerifyingBoard v = new VerifyingBoard(3, 6, VerifyingBoard.VERIFY_SAMPLED, 3);
+		v.place(pyr1, 0, 0);
+		v.commit();
+		v.place(new Piece("0 0"), 0, 1);
+		assertEquals(1, v.getCheckCount());
+		v.commit();
+
+		v.maxHeight = 1;
+		int ops = 0;
+		try {
+			while (ops < 3) {
+				ops++;
+				v.undo();
+			}
+			fail();
+		} catch (RuntimeException expected) {
+		}
+		assertEquals(2, ops);
+		assertEquals(2, v.getCheckCount());
+		assertEquals("one of operations 4-6, last undo: Problem with maxHeight", v.getFailure());
+	}
+	
+	// Boards with the same blocks hash and compare equal however they got there
+	@Test
+	public void testHashEquals() {
+		Board b2 = new Board(3, 6);
+		assertFalse(b.equals(b2));
+		assertNotEquals(b.getZobristHash(), b2.getZobristHash());
+		
+		b2.place(pyr1, 0, 0);
+		assertEquals(b, b2);
+		assertEquals(b.getZobristHash(), b2.getZobristHash());
+		assertEquals(b.hashCode(), b2.hashCode());
+		
+		// Clear the pyramid's row on one board, place the stub on the other
+		b.clearRows();
+		b2.undo();
+		b2.place(new Piece("0 0"), 1, 0);
+		assertEquals(b, b2);
+		assertEquals(b.getZobristHash(), b2.getZobristHash());
+		
+		b.undo();
+		assertEquals(0, b.getZobristHash());
+		assertFalse(b.equals(b2));
+	}
+	
+	// encode() then decode() gives back the same board
+	@Test
+	public void testEncodeDecode() {
+		b.commit();
+		b.place(sRotated, 1, 1);
+		b.commit();
+		
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		b.encode(buf);
+		assertEquals(2 + 3 + 4, b.encodedSize());
+		assertEquals(b.encodedSize(), buf.position());
+		
+		buf.flip();
+		Board b2 = new Board(3, 6);
+		b2.place(s, 0, 3);
+		b2.decode(buf);
+		assertEquals(b, b2);
+		assertEquals(b.toString(), b2.toString());
+		assertEquals(4, b2.getColumnHeight(1));
+		assertEquals(4, b2.getMaxHeight());
+		assertEquals(b.getZobristHash(), b2.getZobristHash());
+		b2.sanityCheck();
+		
+		// Corrupt a column height
+		buf.put(2, (byte) 3);
+		buf.rewind();
+		try {
+			b2.decode(buf);
+			fail();
+		} catch (RuntimeException expected) {
+		}
+	}
+	
+	// The board counts holes and sums heights as pieces come and go
+	@Test
+	public void testHoles() {
+		assertEquals(0, b.getHoles());
+		assertEquals(4, b.getSumHeight());
+		
+		b.commit();
+		b.place(s, 0, b.dropHeight(s, 0));
+		assertEquals(1, b.getColumnHoles(0));
+		assertEquals(0, b.getColumnHoles(1));
+		assertEquals(2, b.getColumnHoles(2));
+		assertEquals(3, b.getHoles());
+		assertEquals(11, b.getSumHeight());
+		
+		b.undo();
+		assertEquals(0, b.getHoles());
+		assertEquals(4, b.getSumHeight());
+	}
+
+	// clearRows() only looks at the rows place() touched, and records
+	// nothing but the reset range when none of them is full
+	@Test
+	public void testDirtyRowsNotFull() {
+		Board b4 = new Board(4, 6);
+		Piece line3 = new Piece("0 0 1 0 2 0");
+		b4.place(line3, 0, 0);
+		assertEquals(0, b4.clearRows());
+		b4.commit();
+
+		assertEquals(Board.PLACE_OK, b4.place(new Piece("0 0"), 3, 2));
+		int size = b4.getJournalSize();
+		assertEquals(0, b4.clearRows());
+		assertEquals(size + 1, b4.getJournalSize());
+		assertEquals(3, b4.getRowWidth(0));
+		assertEquals(3, b4.getColumnHeight(3));
+		b4.sanityCheck();
+	}
+
+	// A full row left uncleared stays in the dirty range across commit()
+	// and later places, and the next clearRows() still finds it
+	@Test
+	public void testDirtyRowsKeptAcrossCommit() {
+		Board b4 = new Board(4, 6);
+		Piece dot = new Piece("0 0");
+		b4.place(new Piece("0 0 1 0 2 0"), 0, 0);
+		b4.commit();
+		assertEquals(Board.PLACE_ROW_FILLED, b4.place(dot, 3, 0));
+		b4.commit();
+		b4.sanityCheck();
+
+		b4.place(dot, 0, 3);
+		b4.commit();
+		assertEquals(1, b4.clearRows());
+		assertEquals(3, b4.getColumnHeight(0));
+		assertEquals(0, b4.getColumnHeight(3));
+		assertEquals(3, b4.getMaxHeight());
+		assertEquals(0, b4.getRowWidth(0));
+		assertTrue(b4.getGrid(0, 2));
+		b4.sanityCheck();
+
+		b4.commit();
+		assertEquals(0, b4.clearRows());
+	}
+
+	// The height recompute journals just the columns whose height changes
+	@Test
+	public void testClearRowsHeights() {
+		b.commit();
+		assertEquals(0, b.getJournalSize());
+		assertEquals(1, b.clearRows());
+		// dirty reset, row 1 down to 0, row 1 emptied, 3 heights, maxHeight
+		assertEquals(7, b.getJournalSize());
+		assertEquals(0, b.getColumnHeight(0));
+		assertEquals(1, b.getColumnHeight(1));
+		assertEquals(0, b.getColumnHeight(2));
+		b.commit();
+
+		// A tall column and a short one, then clear the bottom row
+		b.place(new Piece(Piece.STICK_STR), 0, 0);
+		b.commit();
+		assertEquals(Board.PLACE_ROW_FILLED, b.place(new Piece("0 0"), 2, 0));
+		assertEquals(1, b.clearRows());
+		assertEquals(3, b.getColumnHeight(0));
+		assertEquals(0, b.getColumnHeight(1));
+		assertEquals(0, b.getColumnHeight(2));
+		assertEquals(3, b.getMaxHeight());
+		assertEquals(3, b.getSumHeight());
+		b.undo();
+		assertEquals(4, b.getColumnHeight(0));
+		assertEquals(1, b.getColumnHeight(1));
+		assertEquals(0, b.getColumnHeight(2));
+	}
+	
 	// Make  more tests, by putting together longer series of 
 	// place, clearRows, undo, place ... checking a few col/row/max
 	// numbers that the board looks right after the operations.
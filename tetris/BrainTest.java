@@ -0,0 +1,306 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.*;
+
+/*
+  Unit test for the Brain implementations -- checks them against
+  DefaultBrain over a fixed sequence of pieces.
+ */
+public class BrainTest {
+	Board board;
+	Piece[] pieces;
+	Random random;
+	DefaultBrain brain;
+
+	@Before
+	public void setUp() throws Exception {
+		board = new Board(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE);
+		pieces = Piece.getPieces();
+		random = new Random(0);
+		brain = new DefaultBrain();
+	}
+
+	// Plays the move into the board
+	static void play(Board b, Brain.Move move) {
+		int result = b.place(move.piece, move.x, move.y);
+		assertTrue(result <= Board.PLACE_ROW_FILLED);
+		b.clearRows();
+		b.commit();
+	}
+
+	// Plays up to moves random pieces into the board, checking that
+	// actual picks expected's piece, x and y for each (and its score,
+	// if sameScore) and leaves the board as it was. Stops when
+	// expected finds no move, as actual must too. Returns the number
+	// of moves played. The limit is the board's height less TOP_SPACE.
+	static int assertPlaysLike(Brain expected, Brain actual, Board b, Random random, int moves, boolean sameScore) {
+		Piece[] pieces = Piece.getPieces();
+		int limitHeight = b.getHeight() - JTetris.TOP_SPACE;
+		for (int i = 0; i < moves; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Brain.Move expectedMove = expected.bestMove(b, piece, limitHeight, null);
+			Board before = new Board(b);
+			Brain.Move actualMove = actual.bestMove(b, piece, limitHeight, null);
+			assertEquals(before, b);
+			if (expectedMove == null) {
+				assertNull(actualMove);
+				return i;
+			}
+			assertSame(expectedMove.piece, actualMove.piece);
+			assertEquals(expectedMove.x, actualMove.x);
+			assertEquals(expectedMove.y, actualMove.y);
+			if (sameScore) assertEquals(expectedMove.score, actualMove.score, 0);
+			play(b, expectedMove);
+		}
+		return moves;
+	}
+
+	// ParallelBrain picks the same moves as DefaultBrain, ties and all
+	@Test
+	public void testParallelSameMoves() {
+		assertPlaysLike(brain, new ParallelBrain(), board, random, 200, true);
+	}
+
+	// Split into chunks, each played on a pool thread's own board,
+	// ParallelBrain still picks DefaultBrain's moves on a wide board
+	@Test
+	public void testParallelChunks() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Board wide = new Board(Board.MAX_WIDTH, 30);
+		assertPlaysLike(brain, new ParallelBrain(pool, 1), wide, random, 200, true);
+		pool.shutdown();
+	}
+
+	// ReachableBrain lies a stick down in a cave that straight drops
+	// can't reach, and rates it as DefaultBrain would
+	@Test
+	public void testReachable() {
+		Board cave = MoveGeneratorTest.caveBoard();
+		Piece stick = pieces[Piece.STICK];
+		Brain.Move drop = brain.bestMove(cave, stick, 10, null);
+		assertSame(stick, drop.piece);
+		assertEquals(2, drop.x);
+		assertEquals(0, drop.y);
+
+		Brain.Move move = new ReachableBrain().bestMove(cave, stick, 10, null);
+		assertSame(stick.fastRotation(), move.piece);
+		assertEquals(0, move.y);
+		assertTrue(move.score < drop.score);
+		// max 6, heights 6+6+1+6+6+6, 9 holes left in the cave
+		assertEquals(8 * 6 + 40 * 31 / 6.0 + 1.25 * 9, move.score, 1e-9);
+
+		play(cave, move);
+		assertEquals(move.score, brain.rateBoard(cave), 1e-9);
+		assertEquals(1, cave.getColumnHeight(2));
+	}
+
+	// With no preview BeamBrain is DefaultBrain
+	@Test
+	public void testBeamNoPreview() {
+		final LookaheadBrain beam = new BeamBrain();
+		Brain noPreview = new Brain() {
+			public Brain.Move bestMove(Board b, Piece piece, int limitHeight, Brain.Move move) {
+				return beam.bestMove(b, piece, null, limitHeight, move);
+			}
+		};
+		assertPlaysLike(brain, noPreview, board, random, 50, false);
+	}
+
+	// Looking ahead, BeamBrain returns legal moves and its board
+	// is left as it was
+	@Test
+	public void testBeamPreview() {
+		LookaheadBrain beam = new BeamBrain(3, 4);
+		Piece[] preview = new Piece[2];
+		for (int i = 0; i < 100; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			preview[0] = pieces[random.nextInt(pieces.length)];
+			preview[1] = pieces[random.nextInt(pieces.length)];
+			Board before = new Board(board);
+			Brain.Move move = beam.bestMove(board, piece, preview, JTetris.HEIGHT, null);
+			if (move == null) break;
+			assertEquals(before, board);
+			play(board, move);
+		}
+	}
+
+	// ExpectimaxBrain with no lookahead is DefaultBrain, and looking
+	// ahead it leaves the board as it was
+	@Test
+	public void testExpectimax() {
+		assertPlaysLike(brain, new ExpectimaxBrain(0, 1, 1000), board, random, 30, false);
+
+		ExpectimaxBrain expecti = new ExpectimaxBrain(2, 2, 20000);
+		for (int i = 0; i < 30; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Board before = new Board(board);
+			Brain.Move move = expecti.bestMove(board, piece, JTetris.HEIGHT, null);
+			if (move == null) break;
+			assertEquals(before, board);
+			play(board, move);
+		}
+		assertTrue(expecti.getMemoHits() > 0);
+	}
+
+	// A 4X8 board with one row, "+ ++"
+	private Board gapBoard() {
+		Board gap = new Board(4, 8);
+		Piece dot = new Piece("0 0");
+		for (int x : new int[] {0, 2, 3}) {
+			gap.place(dot, x, 0);
+			gap.commit();
+		}
+		return gap;
+	}
+
+	// Greedy, an L1 hooks into the gap and clears the row, leaving
+	// " +++" for the S1 to make a mess of. Looking at the S1, BeamBrain
+	// stands the L1 up on the right so the S1 clears two rows
+	@Test
+	public void testBeamLookahead() {
+		Board gap = gapBoard();
+		Piece l1 = pieces[Piece.L1];
+		Piece[] preview = { pieces[Piece.S1] };
+
+		Brain.Move greedy = brain.bestMove(gap, l1, 8, null);
+		assertEquals(1, greedy.x);
+		assertEquals(0, greedy.y);
+		assertEquals(3, greedy.piece.getWidth());
+		// " +++" -- max 1, heights 0+1+1+1
+		assertEquals(8 * 1 + 40 * 3 / 4.0, greedy.score, 1e-9);
+		Brain.Move shallow = new BeamBrain(1, 64).bestMove(gap, l1, preview, 8, null);
+		assertSame(greedy.piece, shallow.piece);
+		assertEquals(greedy.x, shallow.x);
+
+		Board before = new Board(gap);
+		Brain.Move move = new BeamBrain(2, 64).bestMove(gap, l1, preview, 8, null);
+		assertEquals(before, gap);
+		assertSame(l1, move.piece);
+		assertEquals(2, move.x);
+		assertEquals(1, move.y);
+		// after the S1 just "+ + " under "  + " is left -- max 2,
+		// heights 1+0+2+0
+		assertEquals(8 * 2 + 40 * 3 / 4.0, move.score, 1e-9);
+
+		// which beats the S1's best after the greedy move
+		play(gap, greedy);
+		assertTrue(brain.bestMove(gap, preview[0], 8, null).score > move.score);
+	}
+
+	// Expectimax values a play at the average, over the 7 pieces, of
+	// the best next play -- and for an L2 on the gap board that picks
+	// a different play than greedy does
+	@Test
+	public void testExpectimaxLookahead() {
+		Board gap = gapBoard();
+		Piece l2 = pieces[Piece.L2];
+		Brain.Move greedy = brain.bestMove(gap, l2, 8, null);
+
+		Board before = new Board(gap);
+		Brain.Move move = new ExpectimaxBrain(1, 64, 1000000).bestMove(gap, l2, 8, null);
+		assertEquals(before, gap);
+		assertSame(l2, move.piece);
+		assertEquals(2, move.x);
+		assertEquals(1, move.y);
+		assertFalse(greedy.x == move.x && greedy.piece == move.piece);
+
+		Board after = new Board(gap);
+		play(after, move);
+		assertEquals(averageNext(after), move.score, 1e-9);
+
+		play(gap, greedy);
+		assertTrue(averageNext(gap) > move.score);
+	}
+
+	// The average over the pieces of DefaultBrain's best score
+	private double averageNext(Board b) {
+		double sum = 0;
+		for (Piece piece : pieces) {
+			sum += brain.bestMove(b, piece, 8, null).score;
+		}
+		return sum / pieces.length;
+	}
+
+	// With the default weights WeightedBrain is DefaultBrain
+	@Test
+	public void testWeightedDefault() {
+		assertPlaysLike(brain, new WeightedBrain(), board, random, 100, false);
+	}
+
+	// Out of time AnytimeBrain gives the DefaultBrain move, with time
+	// it finishes every depth, and either way the board is left alone
+	@Test
+	public void testAnytime() {
+		AnytimeBrain anytime = new AnytimeBrain(0, 1, 2);
+		int quick = assertPlaysLike(brain, anytime, board, random, 20, false);
+		assertEquals(0, anytime.getCompletedDepth());
+
+		int deep = 0;
+		for (int i = 0; i < 20; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Board before = new Board(board);
+			long deadline = System.nanoTime() + 60000000000L;
+			Brain.Move move = anytime.bestMove(board, piece, JTetris.HEIGHT, null, deadline);
+			if (move == null) break;
+			assertEquals(1, anytime.getCompletedDepth());
+			assertEquals(before, board);
+			play(board, move);
+			deep++;
+		}
+		int[] counts = anytime.getDepthCounts();
+		assertEquals(quick, counts[0]);
+		assertEquals(deep, counts[1]);
+		assertEquals((double) deep / (quick + deep), anytime.getAverageDepth(), 1e-12);
+	}
+
+	// bestMoves() on many games gives each game's bestMove(),
+	// reusing the moves array, and a null piece once a game is over
+	@Test
+	public void testBatchedMoves() {
+		int games = 16;
+		Board[] boards = new Board[games];
+		Board[] others = new Board[games];
+		Piece[] next = new Piece[games];
+		int[] limits = new int[games];
+		for (int g = 0; g < games; g++) {
+			boards[g] = new Board(board);
+			others[g] = new Board(board);
+			limits[g] = JTetris.HEIGHT - g;
+		}
+		
+		BatchedBrain parallel = new ParallelBrain();
+		Brain.Move[] moves = null;
+		Brain.Move[] parallelMoves = null;
+		boolean ended = false;
+		for (int step = 0; step < 60; step++) {
+			for (int g = 0; g < games; g++) next[g] = pieces[random.nextInt(pieces.length)];
+			Brain.Move[] was = moves;
+			moves = brain.bestMoves(boards, next, limits, games, moves);
+			if (was != null) assertSame(was, moves);
+			parallelMoves = parallel.bestMoves(others, next, limits, games, parallelMoves);
+			
+			for (int g = 0; g < games; g++) {
+				Brain.Move expected = brain.bestMove(new Board(boards[g]), next[g], limits[g], null);
+				if (expected == null) {
+					assertNull(moves[g].piece);
+					assertNull(parallelMoves[g].piece);
+					ended = true;
+					continue;
+				}
+				assertSame(expected.piece, moves[g].piece);
+				assertEquals(expected.x, moves[g].x);
+				assertEquals(expected.y, moves[g].y);
+				assertSame(expected.piece, parallelMoves[g].piece);
+				assertEquals(expected.x, parallelMoves[g].x);
+				play(boards[g], moves[g]);
+				play(others[g], parallelMoves[g]);
+			}
+		}
+		assertTrue(ended);
+	}
+}
@@ -0,0 +1,101 @@
+// CachingBrain.java
+
+package tetris;
+
+/**
+ A brain that answers from a MoveCache when it can, and asks
+ another brain (and caches the answer) when it can't.
+
+ The weightsId must tell apart any brains sharing the cache that
+ could pick different moves for the same position -- for a
+ WeightedBrain use MoveCache.weightsId(weights), for other brains
+ any constant that is theirs alone. A cached move is checked to
+ fit on this board and rest there (it can't move down) before it is
+ used, so a rare key collision just costs a miss. Slides and tucks,
+ as ReachableBrain finds, pass that check as well as straight drops. A cached "no move" has
+ nothing to check against the board, so the brain is asked again --
+ that only happens once a game, when it ends.
+
+ Thread safe if the brain it wraps is.
+*/
+public class CachingBrain implements Brain {
+    private final Brain brain;
+    private final MoveCache cache;
+    private final long weightsId;
+
+    public CachingBrain(Brain brain, MoveCache cache, long weightsId) {
+        this.brain = brain;
+        this.cache = cache;
+        this.weightsId = weightsId;
+    }
+
+    public MoveCache getCache() {
+        return cache;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        long key = MoveCache.key(board, piece, limitHeight, weightsId);
+
+        Piece current = null;
+        int x = 0, y = 0;
+        double score = 0;
+        synchronized (cache) {
+            if (cache.get(key)) {
+                x = cache.getX();
+                y = cache.getY();
+                score = cache.getScore();
+                current = usable(board, piece, cache.getRotation(), x, y, limitHeight);
+                if (current == null) cache.unusable();
+            }
+        }
+
+        if (current != null) {
+            if (move==null) move = new Brain.Move();
+            move.x = x;
+            move.y = y;
+            move.piece = current;
+            move.score = score;
+            return(move);
+        }
+
+        // Not cached (or not usable, or no move) -- ask the brain
+        Brain.Move result = brain.bestMove(board, piece, limitHeight, move);
+        if (result == null) {
+            cache.put(key, MoveCache.NO_MOVE, 0, 0, 0);
+        }
+        else {
+            cache.put(key, rotationOf(piece, result.piece), result.x, result.y, result.score);
+        }
+        return result;
+    }
+
+    /*
+     Returns the rotation-th fastRotation() of the piece if it fits
+     at x,y on the board, rests there, and stays under limitHeight,
+     or null if it doesn't (or the result is NO_MOVE).
+    */
+    private static Piece usable(Board board, Piece piece, int rotation, int x, int y, int limitHeight) {
+        if (rotation == MoveCache.NO_MOVE) return null;
+        Piece current = piece;
+        for (int i = 0; i<rotation && current != null; i++) current = current.fastRotation();
+        if (current != null && board.canPlace(current, x, y) && !board.canPlace(current, x, y-1)
+                && y + current.getHeight() <= limitHeight) {
+            return current;
+        }
+        return null;
+    }
+
+    // Number of fastRotation() steps from piece to rotated
+    private static int rotationOf(Piece piece, Piece rotated) {
+        int rotation = 0;
+        Piece current = piece;
+        while (current != rotated) {
+            current = current.fastRotation();
+            rotation++;
+            if (current == null || current == piece) {
+                throw new RuntimeException("Move piece is not a rotation of the piece");
+            }
+        }
+        return rotation;
+    }
+}
@@ -16,7 +16,7 @@ package tetris;
  brain -- just subclass off DefaultBrain and override rateBoard().
 */
 
-public class DefaultBrain implements Brain {
+public class DefaultBrain implements BatchedBrain {
     /**
      Given a piece and a board, returns a move object that represents
      the best play for that piece, or returns null if no play is possible.
@@ -47,7 +47,7 @@ public class DefaultBrain implements Brain {
                     if (result <= Board.PLACE_ROW_FILLED) {
                         if (result == Board.PLACE_ROW_FILLED) board.clearRows();
                         
-                        double score = rateBoard(board);
+                        double score = rateMove(board, current, x, y);
                         
                         if (score<bestScore) {
                             bestScore = score;
@@ -76,34 +76,62 @@ public class DefaultBrain implements Brain {
     }
     
     
+    /**
+     Finds the best move on each board in turn. See BatchedBrain.
+     This is only an adapter -- it calls bestMove() for each board,
+     so it saves nothing but the Move objects. Each board needs its
+     own search anyway, and finding the rotations and x bounds is a
+     tiny part of it. ParallelBrain overrides this to spread the
+     boards over its threads.
+    */
+    public Brain.Move[] bestMoves(Board[] boards, Piece[] pieces, int[] limitHeights, int count, Brain.Move[] moves) {
+        moves = movesFor(count, moves);
+        for (int i = 0; i<count; i++) {
+            if (bestMove(boards[i], pieces[i], limitHeights[i], moves[i]) == null) moves[i].piece = null;
+        }
+        return(moves);
+    }
+    
+    /*
+     Returns a moves array of at least count, with a Move
+     object in each of the first count slots.
+    */
+    static Brain.Move[] movesFor(int count, Brain.Move[] moves) {
+        if (moves == null) moves = new Brain.Move[count];
+        else if (moves.length < count) moves = java.util.Arrays.copyOf(moves, count);
+        for (int i = 0; i<count; i++) {
+            if (moves[i] == null) moves[i] = new Brain.Move();
+        }
+        return(moves);
+    }
+    
+    
+    /*
+     Rates the board just after the piece was played at x,y
+     (and any rows it filled were cleared). bestMove() rates
+     every play with this. It just calls rateBoard(), but a
+     brain that cares where the piece went can override it.
+    */
+    public double rateMove(Board board, Piece piece, int x, int y) {
+        return rateBoard(board);
+    }
+    
+    
     /*
      A simple brain function.
      Given a board, produce a number that rates
      that board position -- larger numbers for worse boards.
      This version just counts the height
      and the number of "holes" in the board.
+     The board keeps both counts up to date itself,
+     so this is O(1).
     */
     public double rateBoard(Board board) {
         final int width = board.getWidth();
         final int maxHeight = board.getMaxHeight();
         
-        int sumHeight = 0;
-        int holes = 0;
-        
-        // Count the holes, and sum up the heights
-        for (int x=0; x<width; x++) {
-            final int colHeight = board.getColumnHeight(x);
-            sumHeight += colHeight;
-            
-            int y = colHeight - 2;    // addr of first possible hole
-            
-            while (y>=0) {
-                if  (!board.getGrid(x,y)) {
-                    holes++;
-                }
-                y--;
-            }
-        }
+        int sumHeight = board.getSumHeight();
+        int holes = board.getHoles();
         
         double avgHeight = ((double)sumHeight)/width;
         
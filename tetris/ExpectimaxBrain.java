@@ -0,0 +1,270 @@
+// ExpectimaxBrain.java
+
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ A brain that looks past the current piece by averaging over
+ the pieces that might come next.
+
+ The search alternates two kinds of node. At a move node the
+ piece is known and the brain picks its best play (lowest score).
+ At a chance node the next piece is not known yet, so the value
+ is the average of the move nodes for each of the 7 pieces --
+ JTetris picks them uniformly. The search goes depth chance
+ nodes deep and rates the boards at the bottom with rateBoard().
+
+ To keep the time per piece bounded:
+ -At each move node every play is rated with rateMove() first,
+ and only the branching best are searched further.
+ -Every play tried counts against a node budget. Once it is
+ used up, chance nodes are just rated with rateBoard().
+ -Chance node values are memoized by the board's Zobrist hash,
+ so the same board reached down different branches (or on a
+ later piece) is only searched once. Values computed after the
+ budget ran out are not memoized.
+
+ All the search happens on the one board passed in, using
+ Board.mark() and rollbackTo(). Not thread safe -- use one per thread.
+*/
+public class ExpectimaxBrain extends DefaultBrain {
+    // Score for a move node where the piece can't be played at all
+    public static final double DEAD_SCORE = 1e6;
+
+    private final int depth;        // chance nodes deep
+    private final int branching;    // plays searched per move node
+    private final int nodeBudget;   // plays tried per bestMove()
+
+    private int budget;             // plays left for this bestMove()
+    private long deadline;          // System.nanoTime() to stop at, if timed
+    private boolean timed;
+    private boolean timedOut;
+    private int memoHits;
+    private int memoLimitHeight = -1;
+
+    // Best plays at each level, sorted by rateMove() score, best first
+    private Piece[][] candPiece;
+    private int[][] candX;
+    private int[][] candY;
+    private double[][] candScore;
+    private int[] candCount;
+
+    // Memo of chance node values -- open addressing on the Zobrist hash
+    private static final int MEMO_BITS = 16;
+    private long[] memoKeys = new long[1 << MEMO_BITS];
+    private double[] memoValues = new double[1 << MEMO_BITS];
+    private boolean[] memoUsed = new boolean[1 << MEMO_BITS];
+
+    private final Piece[] pieces = Piece.getPieces();
+
+    /**
+     Creates a brain that searches 1 chance node deep, 4 plays per
+     move node, with a budget of 50000 plays.
+    */
+    public ExpectimaxBrain() {
+        this(1, 4, 50000);
+    }
+
+    /**
+     Creates a brain with the given search depth (in chance nodes),
+     plays searched per move node, and plays tried per bestMove().
+    */
+    public ExpectimaxBrain(int depth, int branching, int nodeBudget) {
+        if (depth < 0 || branching < 1) throw new RuntimeException("Bad search size");
+        this.depth = depth;
+        this.branching = branching;
+        this.nodeBudget = nodeBudget;
+
+        candPiece = new Piece[depth+1][branching];
+        candX = new int[depth+1][branching];
+        candY = new int[depth+1][branching];
+        candScore = new double[depth+1][branching];
+        candCount = new int[depth+1];
+    }
+
+    /**
+     Returns the number of chance nodes answered from the memo,
+     since the brain was made.
+    */
+    public int getMemoHits() {
+        return memoHits;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        timed = false;
+        return search(board, piece, limitHeight, move);
+    }
+
+    /**
+     Like bestMove(), but gives up once System.nanoTime() passes
+     the deadline. Then isTimedOut() is true and the move returned
+     (if any) is only the best of the plays searched so far, so it
+     should not be used.
+    */
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move, long deadline) {
+        timed = true;
+        this.deadline = deadline;
+        return search(board, piece, limitHeight, move);
+    }
+
+    /**
+     Returns true if the last bestMove() ran out of time.
+    */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    private Brain.Move search(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        // Allocate a move object if necessary
+        if (move==null) move = new Brain.Move();
+
+        board.commit();
+        budget = nodeBudget;
+        timedOut = false;
+
+        // Memo values depend on limitHeight
+        if (limitHeight != memoLimitHeight) {
+            Arrays.fill(memoUsed, false);
+            memoLimitHeight = limitHeight;
+        }
+
+        // Rate every play, then search the best few
+        rankPlays(board, piece, limitHeight, depth);
+        int count = candCount[depth];
+        if (count == 0) return(null);    // could not find a play at all!
+
+        int best = 0;
+        double bestScore = 1e20;
+        for (int i = 0; i<count && !timedOut; i++) {
+            double score = playAndSearch(board, depth, i, limitHeight);
+            if (score<bestScore && !timedOut) {
+                bestScore = score;
+                best = i;
+            }
+        }
+
+        move.x = candX[depth][best];
+        move.y = candY[depth][best];
+        move.piece = candPiece[depth][best];
+        move.score = bestScore;
+        return(move);
+    }
+
+    /*
+     Plays candidate i of the given level, finds the value of the
+     chance node below it, and backs the play out again.
+    */
+    private double playAndSearch(Board board, int level, int i, int limitHeight) {
+        if (level == 0) return candScore[0][i];    // rateMove() already
+
+        int mark = board.mark();
+        board.place(candPiece[level][i], candX[level][i], candY[level][i]);
+        board.clearRows();
+        board.commit();
+        double score = chanceValue(board, level-1, limitHeight);
+        board.rollbackTo(mark);
+        return score;
+    }
+
+    /*
+     The value of a chance node -- the average over all pieces of
+     the best play of that piece.
+    */
+    private double chanceValue(Board board, int level, int limitHeight) {
+        if (timed && System.nanoTime() - deadline >= 0) timedOut = true;
+        if (timedOut) return 0;    // thrown away by the caller
+        if (budget <= 0) return rateBoard(board);
+
+        long key = board.getZobristHash() ^ (level+1) * 0x9E3779B97F4A7C15L;
+        int slot = (int)(key ^ (key >>> 32)) & (memoKeys.length-1);
+        if (memoUsed[slot] && memoKeys[slot] == key) {
+            memoHits++;
+            return memoValues[slot];
+        }
+
+        double sum = 0;
+        for (int p = 0; p<pieces.length; p++) {
+            sum += moveValue(board, pieces[p], level, limitHeight);
+        }
+        double value = sum/pieces.length;
+
+        // A value cut short by the budget or the clock is not memoized
+        if (budget > 0 && !timedOut) {
+            memoUsed[slot] = true;
+            memoKeys[slot] = key;
+            memoValues[slot] = value;
+        }
+        return value;
+    }
+
+    /*
+     The value of a move node -- the best play of the known piece.
+    */
+    private double moveValue(Board board, Piece piece, int level, int limitHeight) {
+        rankPlays(board, piece, limitHeight, level);
+        int count = candCount[level];
+        if (count == 0) return DEAD_SCORE;
+
+        double best = 1e20;
+        for (int i = 0; i<count && !timedOut; i++) {
+            double score = playAndSearch(board, level, i, limitHeight);
+            if (score<best) best = score;
+        }
+        return best;
+    }
+
+    /*
+     Tries every play DefaultBrain would try, rating each with
+     rateMove(), and keeps the branching best for the level.
+    */
+    private void rankPlays(Board board, Piece piece, int limitHeight, int level) {
+        candCount[level] = 0;
+        Piece current = piece;
+        do {
+            final int yBound = limitHeight - current.getHeight()+1;
+            final int xBound = board.getWidth() - current.getWidth()+1;
+
+            for (int x = 0; x<xBound; x++) {
+                int y = board.dropHeight(current, x);
+                if (y<yBound) {    // piece does not stick up too far
+                    int result = board.place(current, x, y);
+                    if (result <= Board.PLACE_ROW_FILLED) {
+                        if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+                        offer(level, current, x, y, rateMove(board, current, x, y));
+                        budget--;
+                    }
+                    board.undo();
+                }
+            }
+            current = current.fastRotation();
+        } while (current != null && current != piece);
+    }
+
+    /*
+     Inserts the play into the level's sorted list if it is among
+     the branching best so far. Earlier plays win ties.
+    */
+    private void offer(int level, Piece piece, int x, int y, double score) {
+        Piece[] pieceList = candPiece[level];
+        int[] xs = candX[level];
+        int[] ys = candY[level];
+        double[] scores = candScore[level];
+        int count = candCount[level];
+        if (count == branching && score >= scores[count-1]) return;
+
+        int i = (count < branching) ? count++ : count-1;
+        while (i > 0 && scores[i-1] > score) {
+            pieceList[i] = pieceList[i-1];
+            xs[i] = xs[i-1];
+            ys[i] = ys[i-1];
+            scores[i] = scores[i-1];
+            i--;
+        }
+        pieceList[i] = piece;
+        xs[i] = x;
+        ys[i] = y;
+        scores[i] = score;
+        candCount[level] = count;
+    }
+}
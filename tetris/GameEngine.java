@@ -0,0 +1,329 @@
+// GameEngine.java
+package tetris;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ The rules of the game with no GUI, so a game can be run as fast
+ as the board and brain allow. JTetris draws a GameEngine, so these
+ are the only copy of the rules.
+
+ A game is driven with tick(), one verb at a time, as JTetris does --
+ the caller plays the part of the keyboard and the timer. Or a brain
+ can play it with playMove(), which puts each piece straight where
+ the brain wants it, skipping the moves on the way down, and
+ runGame() plays a whole game like that.
+
+ The rules: pieces appear centered at the top, a piece
+ lands when a DOWN fails right after another DOWN, rows clearing
+ score 5/10/20/40 (50 for more), every piece scores 1, and the game
+ is over when a piece lands sticking up into the TOP_SPACE rows or a
+ new piece can't be added. A Random picks the pieces uniformly; other
+ PieceGenerators give other sequences. setRecorder() logs the moves
+ to a replay log.
+*/
+public class GameEngine {
+	// size of the board in blocks
+	public static final int WIDTH = 10;
+	public static final int HEIGHT = 20;
+
+	// Extra blocks at the top for pieces to start
+	public static final int TOP_SPACE = 4;
+
+	// Verbs for tick()
+	public static final int ROTATE = 0;
+	public static final int LEFT = 1;
+	public static final int RIGHT = 2;
+	public static final int DROP = 3;
+	public static final int DOWN = 4;
+
+	private final Board board;
+	private final Piece[] pieces;
+	private final PieceGenerator generator;
+	private final int pieceLimit;
+
+	// The current piece in play or null
+	private Piece currentPiece;
+	private int currentX;
+	private int currentY;
+	private boolean moved;	// did the player move the piece
+
+	// State of the game
+	private boolean gameOn;
+	private int count;		// how many pieces added so far
+	private int score;
+	private int landed;		// pieces that have landed
+	private int linesCleared;
+
+	private ReplayWriter recorder;	// or null
+
+	private final Brain.Move move = new Brain.Move();
+
+	/**
+	 Starts a game on a WIDTH x HEIGHT+TOP_SPACE board, with pieces
+	 chosen by the given Random and no limit on their number.
+	*/
+	public GameEngine(Random random) {
+		this(new RandomPieceGenerator(random), 0);
+	}
+
+	/**
+	 Starts a game that stops after pieceLimit pieces have been
+	 played (like the JTetris test mode), or no limit if 0.
+	*/
+	public GameEngine(Random random, int pieceLimit) {
+		this(new RandomPieceGenerator(random), pieceLimit);
+	}
+
+	/**
+	 Starts a game with pieces from the generator, stopping after
+	 pieceLimit pieces, or no limit if 0.
+	*/
+	public GameEngine(PieceGenerator generator, int pieceLimit) {
+		this.generator = generator;
+		this.pieceLimit = pieceLimit;
+		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		pieces = Piece.getPieces();
+		gameOn = true;
+		addNewPiece();
+	}
+
+	/**
+	 Returns the board. While a piece is falling it is in the board,
+	 uncommitted, so callers should only look, not change it.
+	*/
+	public Board getBoard() {
+		return board;
+	}
+
+	public boolean isGameOn() {
+		return gameOn;
+	}
+
+	public Piece getCurrentPiece() {
+		return currentPiece;
+	}
+
+	public int getCurrentX() {
+		return currentX;
+	}
+
+	public int getCurrentY() {
+		return currentY;
+	}
+
+	/**
+	 Returns the number of pieces added, counting the one in play.
+	*/
+	public int getCount() {
+		return count;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 Returns the number of pieces that have landed.
+	*/
+	public int getLanded() {
+		return landed;
+	}
+
+	public int getLinesCleared() {
+		return linesCleared;
+	}
+
+	/**
+	 Records every piece that lands from now on into the replay log,
+	 the next one marked as starting a game. Null stops recording.
+	*/
+	public void setRecorder(ReplayWriter recorder) {
+		this.recorder = recorder;
+		if (recorder != null) recorder.startGame();
+	}
+
+	private Piece pickNextPiece() {
+		return pieces[generator.next()];
+	}
+
+	/*
+	 Adds a new random piece at the top of the board, or ends
+	 the game if it's not possible or the piece limit is reached.
+	*/
+	private void addNewPiece() {
+		count++;
+		score++;
+
+		if (pieceLimit > 0 && count == pieceLimit+1) {
+			gameOn = false;
+			return;
+		}
+
+		// commit things the way they are
+		board.commit();
+		currentPiece = null;
+
+		Piece piece = pickNextPiece();
+
+		// Center it up at the top
+		int px = (board.getWidth() - piece.getWidth())/2;
+		int py = board.getHeight() - piece.getHeight();
+
+		if (setCurrent(piece, px, py) > Board.PLACE_ROW_FILLED) {
+			gameOn = false;
+		}
+	}
+
+	/*
+	 Tries to put the piece in the board as the current piece.
+	 If it doesn't fit, the board is left as it was.
+	*/
+	private int setCurrent(Piece piece, int x, int y) {
+		int result = board.place(piece, x, y);
+		if (result <= Board.PLACE_ROW_FILLED) {
+			currentPiece = piece;
+			currentX = x;
+			currentY = y;
+		}
+		else {
+			board.undo();
+		}
+		return(result);
+	}
+
+	/**
+	 Moves the current piece by the verb -- including landing it,
+	 clearing rows, scoring, and adding the next piece. Does nothing
+	 once the game is over.
+	*/
+	public void tick(int verb) {
+		if (!gameOn) return;
+
+		if (currentPiece != null) {
+			board.undo();	// remove the piece from its old position
+		}
+
+		// The new position
+		Piece newPiece = currentPiece;
+		int newX = currentX;
+		int newY = currentY;
+		switch (verb) {
+			case LEFT: newX--; break;
+
+			case RIGHT: newX++; break;
+
+			case ROTATE:
+				newPiece = newPiece.fastRotation();
+				// rotate about the center
+				newX = newX + (currentPiece.getWidth() - newPiece.getWidth())/2;
+				newY = newY + (currentPiece.getHeight() - newPiece.getHeight())/2;
+				break;
+
+			case DOWN: newY--; break;
+
+			case DROP:
+				newY = board.dropHeight(newPiece, newX);
+				// don't let the drop move the piece up
+				if (newY > currentY) {
+					newY = currentY;
+				}
+				break;
+
+			default:
+				throw new RuntimeException("Bad verb");
+		}
+
+		int result = setCurrent(newPiece, newX, newY);
+		boolean failed = (result >= Board.PLACE_OUT_BOUNDS);
+
+		// if it didn't work, put it back the way it was
+		if (failed && currentPiece != null) {
+			board.place(currentPiece, currentX, currentY);
+		}
+
+		// A failed DOWN right after another DOWN means it has landed
+		if (failed && verb==DOWN && !moved) {
+			land();
+		}
+
+		moved = (!failed && verb!=DOWN);
+	}
+
+	/*
+	 The current piece has come to rest in the board -- clears rows,
+	 scores, and ends the game or adds the next piece.
+	*/
+	private void land() {
+		landed++;
+		if (recorder != null) {
+			try {
+				recorder.record(currentPiece, currentX, currentY);
+			}
+			catch (IOException e) {
+				throw new RuntimeException("Could not record move", e);
+			}
+		}
+		int cleared = board.clearRows();
+		linesCleared += cleared;
+		if (cleared > 0) {
+			switch (cleared) {
+				case 1: score += 5;	 break;
+				case 2: score += 10; break;
+				case 3: score += 20; break;
+				case 4: score += 40; break;
+				default: score += 50;	// could happen with non-standard pieces
+			}
+		}
+
+		// if the board is too tall, we've lost
+		if (board.getMaxHeight() > board.getHeight() - TOP_SPACE) {
+			gameOn = false;
+		}
+		else {
+			addNewPiece();
+		}
+	}
+
+	/**
+	 Asks the brain where the current piece should go, and puts it
+	 straight there -- the fast path for a brain playing. If the brain
+	 finds no play, the piece is dropped where it is instead.
+	 Returns false if the game is over.
+	*/
+	public boolean playMove(Brain brain) {
+		if (!gameOn) return false;
+
+		board.undo();	// the brain wants the board without the piece
+		Piece piece = currentPiece;
+		int x = currentX;
+		int y = currentY;
+		if (brain.bestMove(board, currentPiece, board.getHeight() - TOP_SPACE, move) != null) {
+			piece = move.piece;
+			x = move.x;
+			y = move.y;
+		}
+		else {
+			y = Math.min(y, board.dropHeight(piece, x));
+		}
+
+		if (setCurrent(piece, x, y) > Board.PLACE_ROW_FILLED) {
+			throw new RuntimeException("Brain move does not fit");
+		}
+		moved = false;
+		land();
+		return gameOn;
+	}
+
+	/**
+	 Lets the brain play until the game is over or maxPieces pieces
+	 have landed (no limit if 0). Returns the score.
+	*/
+	public int runGame(Brain brain, int maxPieces) {
+		while (gameOn && (maxPieces == 0 || landed < maxPieces)) {
+			playMove(brain);
+		}
+		return score;
+	}
+}
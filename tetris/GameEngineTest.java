@@ -0,0 +1,85 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class GameEngineTest {
+	Piece[] pieces;
+
+	@Before
+	public void setUp() throws Exception {
+		pieces = Piece.getPieces();
+	}
+
+	// The first piece is JTetris's, centered at the top; it lands
+	// after a DOWN fails following another DOWN
+	@Test
+	public void testTick() {
+		GameEngine game = new GameEngine(new Random(0));
+		Piece first = pieces[(int) (pieces.length * new Random(0).nextDouble())];
+		assertSame(first, game.getCurrentPiece());
+		assertEquals((GameEngine.WIDTH - first.getWidth()) / 2, game.getCurrentX());
+		assertEquals(game.getBoard().getHeight() - first.getHeight(), game.getCurrentY());
+		assertEquals(1, game.getCount());
+		
+		game.tick(GameEngine.LEFT);
+		game.tick(GameEngine.DROP);
+		assertEquals(0, game.getCurrentY());
+		game.tick(GameEngine.DOWN);		// fails, but was moving
+		assertEquals(0, game.getLanded());
+		game.tick(GameEngine.DOWN);		// lands
+		assertEquals(1, game.getLanded());
+		assertEquals(2, game.getCount());
+		assertEquals(2, game.getScore());
+		assertTrue(game.isGameOn());
+	}
+
+	// Letting pieces fall untouched fills up the middle and ends it
+	@Test
+	public void testGameOver() {
+		GameEngine game = new GameEngine(new Random(1));
+		int ticks = 0;
+		while (game.isGameOn()) {
+			game.tick(GameEngine.DOWN);
+			ticks++;
+			assertTrue(ticks < 100000);
+		}
+		assertEquals(0, game.getLinesCleared());
+		assertEquals(game.getCount(), game.getScore());
+		game.tick(GameEngine.DOWN);
+		assertFalse(game.isGameOn());
+	}
+
+	// A brain game gives the same board as placing the brain's
+	// moves by hand, and the piece limit stops it
+	@Test
+	public void testPlayMove() {
+		DefaultBrain brain = new DefaultBrain();
+		GameEngine game = new GameEngine(new Random(2), 10);
+		Random random = new Random(2);
+		Board board = new Board(GameEngine.WIDTH, GameEngine.HEIGHT + GameEngine.TOP_SPACE);
+		int lines = 0;
+		while (game.isGameOn()) {
+			Piece piece = pieces[(int) (pieces.length * random.nextDouble())];
+			assertSame(piece, game.getCurrentPiece());
+			Brain.Move move = brain.bestMove(board, piece, GameEngine.HEIGHT, null);
+			assertNotNull(move);
+			board.place(move.piece, move.x, move.y);
+			lines += board.clearRows();
+			board.commit();
+			game.playMove(brain);
+		}
+		assertEquals(10, game.getLanded());
+		assertEquals(11, game.getCount());
+		assertEquals(lines, game.getLinesCleared());
+		assertEquals(board, game.getBoard());
+		
+		game = new GameEngine(new Random(2));
+		int score = game.runGame(brain, 0);
+		assertFalse(game.isGameOn());
+		assertTrue(score >= game.getCount());
+	}
+}
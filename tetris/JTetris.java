@@ -27,25 +27,23 @@ import java.awt.Toolkit;
 
 /*
  Implementation notes:
- -The "currentPiece" points to a piece that is
- currently falling, or is null when there is no piece.
- -tick() moves the current piece
+ -The game itself, its rules and the falling piece,
+ is a GameEngine; JTetris only draws it and drives it.
+ -tick() passes the verb on to the engine's tick(),
+ then repaints what the engine changed
  -a timer object calls tick(DOWN) periodically
  -keystrokes call tick() with LEFT, RIGHT, etc.
- -Board.undo() is used to remove the piece from its
- old position and then Board.place() is used to install
- the piece in its new position.
 */
 
 public class JTetris extends JComponent {
 	// size of the board in blocks
-	public static final int WIDTH = 10;
-	public static final int HEIGHT = 20;
+	public static final int WIDTH = GameEngine.WIDTH;
+	public static final int HEIGHT = GameEngine.HEIGHT;
 	
 	// Extra blocks at the top for pieces to start.
 	// If a piece is sticking up into this area
 	// when it has landed -- game over!
-	public static final int TOP_SPACE = 4;
+	public static final int TOP_SPACE = GameEngine.TOP_SPACE;
 	
 	// When this is true, plays a fixed sequence of 100 pieces
 	protected boolean testMode = false;
@@ -55,36 +53,18 @@ public class JTetris extends JComponent {
 	// (default false, so debugging is easier)
 	protected boolean DRAW_OPTIMIZE = false;
 	
-	// Board data structures
+	// The game being played, and its board
+	protected GameEngine engine;
 	protected Board board;
-	protected Piece[] pieces;
-	
-	
-	// The current piece in play or null
-	protected Piece currentPiece;
-	protected int currentX;
-	protected int currentY;
-	protected boolean moved;	// did the player move the piece
-	
-	
-	// The piece we're thinking about playing
-	// -- set by computeNewPosition
-	// (storing this in ivars is slightly questionable style)
-	protected Piece newPiece;
-	protected int newX;
-	protected int newY;
 	
 	// State of the game
 	protected boolean gameOn;	// true if we are playing
-	protected int count;		 // how many pieces played so far
 	protected long startTime;	// used to measure elapsed time
-	protected Random random;	 // the random generator for new pieces
 	
 	
 	// Controls
 	protected JLabel countLabel;
 	protected JLabel scoreLabel;
-	protected int score;
 	protected JLabel timeLabel;
 	protected JButton startButton;
 	protected JButton stopButton;
@@ -107,7 +87,7 @@ public class JTetris extends JComponent {
 				(HEIGHT+TOP_SPACE)*pixels+2));
 		gameOn = false;
 		
-		pieces = Piece.getPieces();
+		// empty until a game starts
 		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
 
 
@@ -206,26 +186,21 @@ public class JTetris extends JComponent {
 	 so the game is happening.
 	*/
 	public void startGame() {
-		// cheap way to reset the board state
-		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		// Set mode based on checkbox at start of game
+		testMode = testButton.isSelected();
+		
+		if (testMode) engine = new GameEngine(new Random(0), TEST_LIMIT);	// same seq every time
+		else engine = new GameEngine(new Random(), 0); // diff seq each game
+		board = engine.getBoard();
 		
 		// draw the new board state once
 		repaint();
 		
-		count = 0;
-		score = 0;
 		updateCounters();
 		gameOn = true;
 		
-		// Set mode based on checkbox at start of game
-		testMode = testButton.isSelected();
-		
-		if (testMode) random = new Random(0);	// same seq every time
-		else random = new Random(); // diff seq each game
-		
 		enableButtons();
 		timeLabel.setText(" ");
-		addNewPiece();
 		timer.start();
 		startTime = System.currentTimeMillis();
 	}
@@ -254,156 +229,22 @@ public class JTetris extends JComponent {
 	}
 	
 	
-	/**
-	 Given a piece, tries to install that piece
-	 into the board and set it to be the current piece.
-	 Does the necessary repaints.
-	 If the placement is not possible, then the placement
-	 is undone, and the board is not changed. The board
-	 should be in the committed state when this is called.
-	 Returns the same error code as Board.place().
-	*/
-	public int setCurrent(Piece piece, int x, int y) {
-		int result = board.place(piece, x, y);
-		
-		if (result <= Board.PLACE_ROW_FILLED) { // SUCESS
-			// repaint the rect where it used to be
-			if (currentPiece != null) repaintPiece(currentPiece, currentX, currentY);
-			currentPiece = piece;
-			currentX = x;
-			currentY = y;
-			// repaint the rect where it is now
-			repaintPiece(currentPiece, currentX, currentY);
-		}
-		else {
-			board.undo();
-		}
-		
-		return(result);
-	}
-
-
-	/**
-	 Selects the next piece to use using the random generator
-	 set in startGame().
-	*/
-	public Piece pickNextPiece() {
-		int pieceNum;
-		
-		pieceNum = (int) (pieces.length * random.nextDouble());
-		
-		Piece piece	 = pieces[pieceNum];
-		
-		return(piece);
-	}
-	
-			
-	/**
-	 Tries to add a new random piece at the top of the board.
-	 Ends the game if it's not possible.
-	*/
-	public void addNewPiece() {
-		count++;
-		score++;
-		
-		if (testMode && count == TEST_LIMIT+1) {
-			 stopGame();
-			 return;
-		}
-
-		// commit things the way they are
-		board.commit();
-		currentPiece = null;
-
-		Piece piece = pickNextPiece();
-		
-		// Center it up at the top
-		int px = (board.getWidth() - piece.getWidth())/2;
-		int py = board.getHeight() - piece.getHeight();
-		
-		// add the new piece to be in play
-		int result = setCurrent(piece, px, py);
-		
-		// This probably never happens, since
-		// the blocks at the top allow space
-		// for new pieces to at least be added.
-		if (result>Board.PLACE_ROW_FILLED) {
-			stopGame();
-		}
-
-		updateCounters();
-	}
-	
 	/**
 	 Updates the count/score labels with the latest values.
 	 */
 	private void updateCounters() {
-		countLabel.setText("Pieces " + count);
-		scoreLabel.setText("Score " + score);
+		countLabel.setText("Pieces " + engine.getCount());
+		scoreLabel.setText("Score " + engine.getScore());
 	}
 	
 	
-	/**
-	 Figures a new position for the current piece
-	 based on the given verb (LEFT, RIGHT, ...).
-	 The board should be in the committed state --
-	 i.e. the piece should not be in the board at the moment.
-	 This is necessary so dropHeight() may be called without
-	 the piece "hitting itself" on the way down.
-
-	 Sets the ivars newX, newY, and newPiece to hold
-	 what it thinks the new piece position should be.
-	 (Storing an intermediate result like that in
-	 ivars is a little tacky.)
-	*/
-	public void computeNewPosition(int verb) {
-		// As a starting point, the new position is the same as the old
-		newPiece = currentPiece;
-		newX = currentX;
-		newY = currentY;
-		
-		// Make changes based on the verb
-		switch (verb) {
-			case LEFT: newX--; break;
-			
-			case RIGHT: newX++; break;
-			
-			case ROTATE:
-				newPiece = newPiece.fastRotation();
-				
-				// tricky: make the piece appear to rotate about its center
-				// can't just leave it at the same lower-left origin as the
-				// previous piece.
-				newX = newX + (currentPiece.getWidth() - newPiece.getWidth())/2;
-				newY = newY + (currentPiece.getHeight() - newPiece.getHeight())/2;
-				break;
-				
-			case DOWN: newY--; break;
-			
-			case DROP:
-			 newY = board.dropHeight(newPiece, newX);
-			 
-			 // trick: avoid the case where the drop would cause
-			 // the piece to appear to move up
-			 if (newY > currentY) {
-				 newY = currentY;
-			 }
-			 break;
-			 
-			default:
-				 throw new RuntimeException("Bad verb");
-		}
-	
-	}
-
 
-
-		
-	public static final int ROTATE = 0;
-	public static final int LEFT = 1;
-	public static final int RIGHT = 2;
-	public static final int DROP = 3;
-	public static final int DOWN = 4;
+	// Verbs for tick(), the engine's
+	public static final int ROTATE = GameEngine.ROTATE;
+	public static final int LEFT = GameEngine.LEFT;
+	public static final int RIGHT = GameEngine.RIGHT;
+	public static final int DROP = GameEngine.DROP;
+	public static final int DOWN = GameEngine.DOWN;
 	/**
 	 Called to change the position of the current piece.
 	 Each key press calls this once with the verbs
@@ -412,76 +253,57 @@ public class JTetris extends JComponent {
 	 the piece down one square.
 
 	 Before this is called, the piece is at some location in the board.
-	 This advances the piece to be at its next location.
+	 The engine advances the piece to be at its next location, landing
+	 it if need be, and this repaints what changed.
 	 
 	 Overriden by the brain when it plays.
 	*/
 	public void tick(int verb) {
 		if (!gameOn) return;
 		
-		if (currentPiece != null) {
-			board.undo();	// remove the piece from its old position
-		}
-		
-		// Sets the newXXX ivars
-		computeNewPosition(verb);
+		// where the piece was, and how far the game had got
+		Piece oldPiece = engine.getCurrentPiece();
+		int oldX = engine.getCurrentX();
+		int oldY = engine.getCurrentY();
+		int landed = engine.getLanded();
+		int lines = engine.getLinesCleared();
 		
-		// try out the new position (rolls back if it doesn't work)
-		int result = setCurrent(newPiece, newX, newY);
+		engine.tick(verb);
 		
-		// if row clearing is going to happen, draw the
-		// whole board so the green row shows up
-		if (result ==  Board.PLACE_ROW_FILLED) {
+		if (engine.getLanded() != landed) {	// it's landed
+			// clearing 4 gets you a beep!
+			if (engine.getLinesCleared() - lines == 4) Toolkit.getDefaultToolkit().beep();
+			updateCounters();
+			
+			// rows may have cleared, and the next piece is in
 			repaint();
-		}
-		
-
-		boolean failed = (result >= Board.PLACE_OUT_BOUNDS);
-		
-		// if it didn't work, put it back the way it was
-		if (failed) {
-			if (currentPiece != null) board.place(currentPiece, currentX, currentY);
-			repaintPiece(currentPiece, currentX, currentY);
-		}
-		
-		/*
-		 How to detect when a piece has landed:
-		 if this move hits something on its DOWN verb,
-		 and the previous verb was also DOWN (i.e. the player was not
-		 still moving it),	then the previous position must be the correct
-		 "landed" position, so we're done with the falling of this piece.
-		*/
-		if (failed && verb==DOWN && !moved) {	// it's landed
-		
-			int cleared = board.clearRows();
-			if (cleared > 0) {
-				// score goes up by 5, 10, 20, 40 for row clearing
-				// clearing 4 gets you a beep!
-				switch (cleared) {
-					case 1: score += 5;	 break;
-					case 2: score += 10;  break;
-					case 3: score += 20;  break;
-					case 4: score += 40; Toolkit.getDefaultToolkit().beep(); break;
-					default: score += 50;  // could happen with non-standard pieces
-				}
-				updateCounters();
-				repaint();	// repaint to show the result of the row clearing
-			}
 			
+			// the engine ends the game when the board is too tall,
+			// or at the end of the test sequence
+			if (!engine.isGameOn()) stopGame();
+		}
+		else {
+			repaintPiece(oldPiece, oldX, oldY);
+			repaintPiece(engine.getCurrentPiece(), engine.getCurrentX(), engine.getCurrentY());
 			
-			// if the board is too tall, we've lost
-			if (board.getMaxHeight() > board.getHeight() - TOP_SPACE) {
-				stopGame();
-			}
-			// Otherwise add a new piece and keep playing
-			else {
-				addNewPiece();
-			}
+			// if row clearing is going to happen, draw the
+			// whole board so the green row shows up
+			if (fillsRow()) repaint();
 		}
-		
-		// Note if the player made a successful non-DOWN move --
-		// used to detect if the piece has landed on the next tick()
-		moved = (!failed && verb!=DOWN);
+	}
+	
+	
+	/*
+	 Whether the current piece fills a row, so the
+	 row clears when the piece lands.
+	*/
+	private boolean fillsRow() {
+		Piece piece = engine.getCurrentPiece();
+		int y = engine.getCurrentY();
+		for (int row = y; row < y + piece.getHeight(); row++) {
+			if (board.getRowWidth(row) == board.getWidth()) return true;
+		}
+		return false;
 	}
 
 
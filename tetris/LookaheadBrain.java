@@ -0,0 +1,14 @@
+// LookaheadBrain.java -- the interface for brains that use the preview
+
+package tetris;
+
+public interface LookaheadBrain extends Brain {
+    /**
+     Like Brain.bestMove(), but also given the preview -- the pieces
+     that will come after this one, in order. The brain may look at
+     as many of them as it likes to choose where this piece goes;
+     the move returned is always for this piece. The preview may be
+     empty or null, in which case the brain has only the piece to go on.
+    */
+    public Brain.Move bestMove(Board board, Piece piece, Piece[] preview, int limitHeight, Brain.Move move);
+}
@@ -0,0 +1,301 @@
+// MoveCache.java
+
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ A cache of brain results -- from a position (board, piece,
+ limitHeight and the id of the brain's weights) to the best move
+ and its score. See CachingBrain for putting it in front of a brain.
+
+ Positions are reduced to one 64-bit key, mostly the board's Zobrist
+ hash, so two positions may very rarely share a key. CachingBrain
+ checks that a cached move is legal before using it.
+
+ There are two tiers:
+ -An LRU map in memory, holding up to memoryEntries results.
+ -Optionally, a fixed-size hash table in a memory-mapped file, so
+ results survive from one run to the next and can be shared by
+ every game. A new result overwrites whatever is in its slot, so
+ the file never grows. Results are written through to the file
+ as they are put, and found there when the memory tier misses.
+
+ Hit and miss counts are kept for both tiers. A result the caller
+ finds it can't use is handed back with unusable(), so it counts as
+ a miss -- the counts then say how many searches the cache saved.
+ Thread safe -- every method is synchronized.
+*/
+public class MoveCache {
+    // Rotation stored for a position where there is no play at all
+    public static final int NO_MOVE = 0xFF;
+
+    // File layout -- a header, then SLOT_SIZE byte slots of
+    // key (8), score (8), rotation, x, y, used (1 each), pad (4)
+    private static final int MAGIC = 0x54434D43;    // "TCMC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 24;
+    private static final int PROBES = 4;
+
+    private final LinkedHashMap<Long, long[]> memory;
+    private final FileChannel channel;
+    private final MappedByteBuffer disk;
+    private final int diskSlots;
+
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+
+    // Result of the last successful get(), and its tier
+    private boolean fromDisk;
+    private int rotation;
+    private int x;
+    private int y;
+    private double score;
+
+    /**
+     Creates a cache held in memory only.
+    */
+    public MoveCache(int memoryEntries) {
+        this(memoryEntries, null, 0);
+    }
+
+    /**
+     Creates a cache with a memory tier of memoryEntries results,
+     backed by the given file with room for diskSlots results
+     (a power of 2). An existing file made with the same number of
+     slots is reused, otherwise the file is started over.
+     A null file means no disk tier.
+    */
+    public MoveCache(final int memoryEntries, Path file, int diskSlots) {
+        memory = new LinkedHashMap<Long, long[]>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+
+        if (file == null) {
+            channel = null;
+            disk = null;
+            this.diskSlots = 0;
+            return;
+        }
+        if (diskSlots <= 0 || Integer.bitCount(diskSlots) != 1) {
+            throw new RuntimeException("diskSlots must be a power of 2");
+        }
+        this.diskSlots = diskSlots;
+        long size = HEADER_SIZE + (long) diskSlots * SLOT_SIZE;
+        if (size > Integer.MAX_VALUE) throw new RuntimeException("Cache file too big");
+
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Mapping past the end grows the file with zeros
+            if (channel.size() != size) channel.truncate(0);
+            disk = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (disk.getInt(0) != MAGIC || disk.getInt(4) != VERSION
+                    || disk.getInt(8) != diskSlots) {
+                // Start over
+                for (int i = HEADER_SIZE; i < size; i += SLOT_SIZE) disk.put(i + 19, (byte) 0);
+                disk.putInt(0, MAGIC);
+                disk.putInt(4, VERSION);
+                disk.putInt(8, diskSlots);
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not open cache file " + file, e);
+        }
+    }
+
+    /**
+     Returns the key for a position. weightsId tells apart brains
+     that would rate the same position differently -- see weightsId().
+    */
+    public static long key(Board board, Piece piece, int limitHeight, long weightsId) {
+        long k = board.getZobristHash();
+        k = mix(k ^ piece.getCells());
+        k = mix(k ^ ((long) board.getWidth() << 48 | (long) board.getHeight() << 32 | limitHeight));
+        return mix(k ^ weightsId);
+    }
+
+    /**
+     Returns an id for a weight vector, the same in every run.
+    */
+    public static long weightsId(double[] weights) {
+        long id = weights.length;
+        for (int i = 0; i < weights.length; i++) {
+            id = mix(id ^ Double.doubleToLongBits(weights[i]));
+        }
+        return id;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     Looks up the key. If it is there returns true, and the result
+     can be read with getRotation(), getX(), getY() and getScore().
+    */
+    public synchronized boolean get(long key) {
+        long[] entry = memory.get(key);
+        if (entry != null) {
+            unpack(entry[0]);
+            score = Double.longBitsToDouble(entry[1]);
+            fromDisk = false;
+            memoryHits++;
+            return true;
+        }
+
+        int slot = findSlot(key);
+        if (slot >= 0 && disk.get(slot + 19) != 0 && disk.getLong(slot) == key) {
+            long packed = disk.get(slot + 16) & 0xFF
+                | (disk.get(slot + 17) & 0xFFL) << 8
+                | (disk.get(slot + 18) & 0xFFL) << 16;
+            long bits = disk.getLong(slot + 8);
+            memory.put(key, new long[] {packed, bits});
+            unpack(packed);
+            score = Double.longBitsToDouble(bits);
+            fromDisk = true;
+            diskHits++;
+            return true;
+        }
+
+        misses++;
+        return false;
+    }
+
+    /**
+     Counts the result found by the last get() that returned true
+     as a miss instead of a hit, for a caller that could not use it
+     and had to search anyway.
+    */
+    public synchronized void unusable() {
+        if (fromDisk) diskHits--;
+        else memoryHits--;
+        misses++;
+    }
+
+    /**
+     Stores a result -- the move is the rotation-th fastRotation()
+     of the piece in the key, at x,y. Use NO_MOVE as the rotation
+     when there is no play at all.
+    */
+    public synchronized void put(long key, int rotation, int x, int y, double score) {
+        if (rotation < 0 || rotation > NO_MOVE || x < 0 || x > 0xFF || y < 0 || y > 0xFF) {
+            throw new RuntimeException("Move out of range");
+        }
+        long packed = rotation | (long) x << 8 | (long) y << 16;
+        long bits = Double.doubleToLongBits(score);
+        memory.put(key, new long[] {packed, bits});
+
+        if (disk != null) {
+            int slot = findSlot(key);
+            if (slot < 0) slot = slotOffset((int) key);    // table full here, overwrite
+            disk.putLong(slot, key);
+            disk.putLong(slot + 8, bits);
+            disk.put(slot + 16, (byte) rotation);
+            disk.put(slot + 17, (byte) x);
+            disk.put(slot + 18, (byte) y);
+            disk.put(slot + 19, (byte) 1);
+        }
+    }
+
+    /*
+     Returns the offset of the slot holding the key, or else of the
+     first empty slot on its probe path, or -1 if neither is found
+     (or there is no disk tier).
+    */
+    private int findSlot(long key) {
+        if (disk == null) return -1;
+        int home = (int) key;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = slotOffset(home + i);
+            if (disk.get(slot + 19) == 0 || disk.getLong(slot) == key) return slot;
+        }
+        return -1;
+    }
+
+    private int slotOffset(int index) {
+        return HEADER_SIZE + (index & (diskSlots - 1)) * SLOT_SIZE;
+    }
+
+    private void unpack(long packed) {
+        rotation = (int) (packed & 0xFF);
+        x = (int) (packed >>> 8 & 0xFF);
+        y = (int) (packed >>> 16 & 0xFF);
+    }
+
+    /**
+     The result found by the last get() that returned true.
+    */
+    public synchronized int getRotation() {
+        return rotation;
+    }
+
+    public synchronized int getX() {
+        return x;
+    }
+
+    public synchronized int getY() {
+        return y;
+    }
+
+    public synchronized double getScore() {
+        return score;
+    }
+
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     Returns the fraction of get() calls that found a usable
+     result, in either tier, or 0 if there have been none.
+    */
+    public synchronized double getHitRate() {
+        long total = memoryHits + diskHits + misses;
+        return (total == 0) ? 0 : ((double) (memoryHits + diskHits)) / total;
+    }
+
+    /**
+     Empties the memory tier, so the next lookups go to the disk.
+    */
+    public synchronized void clearMemory() {
+        memory.clear();
+    }
+
+    /**
+     Writes the disk tier out and closes its file. The cache
+     should not be used after this.
+    */
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            disk.force();
+            channel.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not close cache file", e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.*;
+
+public class MoveCacheTest {
+	Board board;
+	Piece[] pieces;
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		board = new Board(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE);
+		pieces = Piece.getPieces();
+		file = File.createTempFile("movecache", ".bin");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testMemory() {
+		MoveCache cache = new MoveCache(2);
+		assertFalse(cache.get(1));
+		cache.put(1, 0, 3, 4, 1.5);
+		cache.put(2, MoveCache.NO_MOVE, 0, 0, 0);
+		assertTrue(cache.get(1));
+		assertEquals(0, cache.getRotation());
+		assertEquals(3, cache.getX());
+		assertEquals(4, cache.getY());
+		assertEquals(1.5, cache.getScore(), 0);
+
+		// 1 was used last, so 2 is the one pushed out
+		cache.put(3, 1, 1, 1, 1);
+		assertFalse(cache.get(2));
+		assertTrue(cache.get(1));
+		assertEquals(2, cache.getMemoryHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0.5, cache.getHitRate(), 0);
+
+		// A hit the caller can't use counts as a miss
+		assertTrue(cache.get(3));
+		cache.unusable();
+		assertEquals(2, cache.getMemoryHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(0.4, cache.getHitRate(), 1e-12);
+	}
+
+	// Results on disk are there for the next cache using the file
+	@Test
+	public void testDisk() {
+		MoveCache cache = new MoveCache(16, file.toPath(), 1024);
+		cache.put(7, 2, 5, 6, -1.0);
+		cache.clearMemory();
+		assertTrue(cache.get(7));
+		assertEquals(1, cache.getDiskHits());
+		cache.close();
+
+		cache = new MoveCache(16, file.toPath(), 1024);
+		assertTrue(cache.get(7));
+		assertEquals(2, cache.getRotation());
+		assertEquals(5, cache.getX());
+		assertEquals(6, cache.getY());
+		assertEquals(-1.0, cache.getScore(), 0);
+		assertFalse(cache.get(8));
+		cache.close();
+
+		// A different size starts over
+		cache = new MoveCache(16, file.toPath(), 512);
+		assertFalse(cache.get(7));
+		cache.close();
+	}
+
+	// A CachingBrain plays a game just like its brain, and a second
+	// game of the same pieces comes entirely from the cache -- all but
+	// the "no move" that ends it, which the brain is asked again
+	@Test
+	public void testCachingBrain() {
+		DefaultBrain brain = new DefaultBrain();
+		MoveCache cache = new MoveCache(100, file.toPath(), 1 << 12);
+		CachingBrain caching = new CachingBrain(brain, cache, 0);
+
+		for (int game = 0; game < 2; game++) {
+			BrainTest.assertPlaysLike(brain, caching, new Board(board), new Random(0), 200, true);
+			if (game == 0) {
+				cache.clearMemory();
+				assertEquals(0, cache.getMemoryHits() + cache.getDiskHits());
+			}
+		}
+		assertEquals(2, cache.getMisses() - cache.getDiskHits() - cache.getMemoryHits());
+		cache.close();
+	}
+
+	// A cached slide under an overhang is used, not asked for again
+	@Test
+	public void testCachingSlide() {
+		final int[] asked = new int[1];
+		Brain reachable = new ReachableBrain() {
+			public Brain.Move bestMove(Board b, Piece piece, int limitHeight, Brain.Move move) {
+				asked[0]++;
+				return super.bestMove(b, piece, limitHeight, move);
+			}
+		};
+		CachingBrain caching = new CachingBrain(reachable, new MoveCache(100), 0);
+		Board cave = MoveGeneratorTest.caveBoard();
+		Piece stick = pieces[Piece.STICK];
+
+		Brain.Move first = caching.bestMove(cave, stick, 10, null);
+		assertTrue(cave.dropHeight(first.piece, first.x) != first.y);	// not a straight drop
+		Brain.Move second = caching.bestMove(cave, stick, 10, null);
+		assertEquals(1, asked[0]);
+		assertSame(first.piece, second.piece);
+		assertEquals(first.x, second.x);
+		assertEquals(first.y, second.y);
+		assertEquals(first.score, second.score, 0);
+	}
+
+	// A "no move" under the key -- as a collision would leave -- is
+	// checked with the brain, not taken as the end of the game
+	@Test
+	public void testCachingNoMove() {
+		DefaultBrain brain = new DefaultBrain();
+		MoveCache cache = new MoveCache(100);
+		CachingBrain caching = new CachingBrain(brain, cache, 0);
+		Piece piece = pieces[Piece.SQUARE];
+		cache.put(MoveCache.key(board, piece, JTetris.HEIGHT, 0), MoveCache.NO_MOVE, 0, 0, 0);
+
+		Brain.Move expected = brain.bestMove(board, piece, JTetris.HEIGHT, null);
+		Brain.Move actual = caching.bestMove(board, piece, JTetris.HEIGHT, null);
+		assertNotNull(actual);
+		assertSame(expected.piece, actual.piece);
+		assertEquals(expected.x, actual.x);
+		assertEquals(expected.y, actual.y);
+		assertEquals(0, cache.getMemoryHits());
+		assertEquals(1, cache.getMisses());
+
+		// and the entry is put right
+		assertTrue(cache.get(MoveCache.key(board, piece, JTetris.HEIGHT, 0)));
+		assertEquals(expected.x, cache.getX());
+	}
+}
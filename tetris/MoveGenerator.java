@@ -0,0 +1,188 @@
+// MoveGenerator.java
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ Finds every place a piece can come to rest on a board, not just
+ the straight drops DefaultBrain tries. Starting from where JTetris
+ adds a new piece, it searches all the (rotation, x, y) positions
+ reachable with the player's moves -- LEFT, RIGHT, DOWN and ROTATE,
+ with ROTATE keeping the piece centered the way
+ GameEngine.tick() does. So slides under overhangs and
+ rotations down in the stack are found too.
+
+ A position is a resting placement if the piece can't move down
+ from it. Collisions are checked with Board.canPlace(), which uses
+ the piece row masks, so the board is never changed. Results go
+ into arrays that are reused from call to call -- typical use:
+ <pre>
+ MoveGenerator gen = new MoveGenerator();
+ int n = gen.generate(board, piece, limitHeight);
+ for (int i = 0; i &lt; n; i++) {
+     board.place(gen.getPiece(i), gen.getX(i), gen.getY(i));
+     ...
+ }
+ </pre>
+ ReachableBrain plays with it. A MoveGenerator is not thread safe;
+ use one per thread.
+*/
+public class MoveGenerator {
+	// Rotations of the current piece, in fastRotation() order
+	private Piece[] rotations = new Piece[4];
+	private int rotationCount;
+
+	// Search state, indexed by (rotation * height + y) * width + x
+	private boolean[] visited = new boolean[0];
+	private int[] queue = new int[0];
+
+	// Results, each packed as (rotation * height + y) * width + x
+	private int[] results = new int[16];
+	private int count;
+
+	private int width;
+	private int height;
+
+	/**
+	 Finds the resting placements for the piece, starting from the
+	 top center of the board as JTetris does. Returns the number
+	 found. Placements that stick up above limitHeight are left out,
+	 as in Brain.bestMove().
+	*/
+	public int generate(Board board, Piece piece, int limitHeight) {
+		int x = (board.getWidth() - piece.getWidth())/2;
+		int y = board.getHeight() - piece.getHeight();
+		return generate(board, piece, x, y, limitHeight);
+	}
+
+	/**
+	 Finds the resting placements for the piece reachable from the
+	 given start position, which must itself fit on the board (or
+	 nothing is found). Returns the number found.
+	*/
+	public int generate(Board board, Piece piece, int startX, int startY, int limitHeight) {
+		width = board.getWidth();
+		height = board.getHeight();
+		count = 0;
+
+		// Collect the rotations
+		rotationCount = 0;
+		Piece current = piece;
+		do {
+			if (rotationCount == rotations.length) {
+				rotations = Arrays.copyOf(rotations, 2 * rotationCount);
+			}
+			rotations[rotationCount++] = current;
+			current = current.fastRotation();
+		} while (current != null && current != piece);
+
+		int states = rotationCount * height * width;
+		if (visited.length < states) {
+			visited = new boolean[states];
+			queue = new int[states];
+		}
+		else {
+			Arrays.fill(visited, 0, states, false);
+		}
+
+		if (!board.canPlace(piece, startX, startY)) return 0;
+
+		// Breadth first search over positions
+		int head = 0;
+		int tail = 0;
+		int start = index(0, startX, startY);
+		visited[start] = true;
+		queue[tail++] = start;
+
+		while (head < tail) {
+			int state = queue[head++];
+			int x = state % width;
+			int y = (state / width) % height;
+			int r = state / (width * height);
+			Piece p = rotations[r];
+
+			// DOWN -- if it can't move down, it rests here
+			if (board.canPlace(p, x, y - 1)) {
+				tail = visit(board, r, x, y - 1, tail);
+			}
+			else if (y + p.getHeight() <= limitHeight) {
+				addResult(state);
+			}
+
+			// LEFT, RIGHT
+			tail = visit(board, r, x - 1, y, tail);
+			tail = visit(board, r, x + 1, y, tail);
+
+			// ROTATE, about the center like JTetris
+			if (rotationCount > 1) {
+				int nr = (r + 1) % rotationCount;
+				Piece next = rotations[nr];
+				int nx = x + (p.getWidth() - next.getWidth())/2;
+				int ny = y + (p.getHeight() - next.getHeight())/2;
+				tail = visit(board, nr, nx, ny, tail);
+			}
+		}
+
+		return count;
+	}
+
+	/*
+	 Queues the position if it fits and has not been seen.
+	 Returns the new queue tail.
+	*/
+	private int visit(Board board, int r, int x, int y, int tail) {
+		if (!board.canPlace(rotations[r], x, y)) return tail;
+		int state = index(r, x, y);
+		if (visited[state]) return tail;
+		visited[state] = true;
+		queue[tail] = state;
+		return tail + 1;
+	}
+
+	private int index(int r, int x, int y) {
+		return (r * height + y) * width + x;
+	}
+
+	private void addResult(int state) {
+		if (count == results.length) {
+			results = Arrays.copyOf(results, 2 * count);
+		}
+		results[count++] = state;
+	}
+
+	/**
+	 Returns the number of placements found by the last generate().
+	*/
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 Returns the rotation of the i'th placement.
+	*/
+	public Piece getPiece(int i) {
+		return rotations[getRotation(i)];
+	}
+
+	/**
+	 Returns the rotation number of the i'th placement -- how
+	 many fastRotation()s it is from the piece passed in.
+	*/
+	public int getRotation(int i) {
+		return results[i] / (width * height);
+	}
+
+	/**
+	 Returns the x of the i'th placement.
+	*/
+	public int getX(int i) {
+		return results[i] % width;
+	}
+
+	/**
+	 Returns the y of the i'th placement.
+	*/
+	public int getY(int i) {
+		return (results[i] / width) % height;
+	}
+}
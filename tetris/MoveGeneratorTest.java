@@ -0,0 +1,116 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class MoveGeneratorTest {
+	Board b;
+	Piece square, block;
+	MoveGenerator gen;
+
+	// A 5X10 board with a two block shelf floating over the
+	// bottom left corner -- room for a square to slide under it.
+	@Before
+	public void setUp() throws Exception {
+		b = new Board(5, 10);
+		square = new Piece(Piece.SQUARE_STR);
+		block = new Piece("0 0  1 0");
+		b.place(block, 0, 2);
+		b.commit();
+		gen = new MoveGenerator();
+	}
+
+	// Does the last generate() include the given placement
+	private boolean found(int x, int y) {
+		for (int i = 0; i < gen.getCount(); i++) {
+			if (gen.getX(i) == x && gen.getY(i) == y) return true;
+		}
+		return false;
+	}
+
+	// Finds straight drops and the slide under the shelf
+	@Test
+	public void testSlideUnder() {
+		int n = gen.generate(b, square, 10);
+		assertEquals(n, gen.getCount());
+
+		// drops onto the shelf and the floor
+		assertTrue(found(0, 3));
+		assertTrue(found(3, 0));
+		// slide under the shelf
+		assertTrue(found(0, 0));
+		assertTrue(found(1, 0));
+		assertFalse(found(0, 1));
+
+		// Every result fits and can't move down
+		for (int i = 0; i < n; i++) {
+			assertSame(square, gen.getPiece(i));
+			assertTrue(b.canPlace(gen.getPiece(i), gen.getX(i), gen.getY(i)));
+			assertFalse(b.canPlace(gen.getPiece(i), gen.getX(i), gen.getY(i) - 1));
+		}
+	}
+
+	// Placements sticking up over limitHeight are left out
+	@Test
+	public void testLimitHeight() {
+		gen.generate(b, square, 4);
+		assertFalse(found(0, 3));
+		assertTrue(found(0, 0));
+		assertTrue(found(3, 0));
+	}
+
+	// A 6X10 board with rows 2-5 solid but for a shaft at x=2 (and
+	// a notch at the right), over an open cave in rows 0-1. A stick
+	// only gets in upright, and can only lie down by rotating there.
+	static Board caveBoard() {
+		Board cave = new Board(6, 10);
+		Piece block = new Piece("0 0  1 0  0 1  1 1  0 2  1 2  0 3  1 3");
+		cave.place(block, 0, 2);
+		cave.commit();
+		cave.place(block, 3, 2);
+		cave.commit();
+		cave.place(new Piece("0 0  0 1"), 5, 4);
+		cave.commit();
+		cave.sanityCheck();
+		return cave;
+	}
+
+	// Is there a placement of the rotation at y
+	private boolean foundRotation(int rotation, int y) {
+		for (int i = 0; i < gen.getCount(); i++) {
+			if (gen.getRotation(i) == rotation && gen.getY(i) == y) return true;
+		}
+		return false;
+	}
+
+	// A lying stick in the cave is found by rotating near the floor
+	@Test
+	public void testRotateNearFloor() {
+		Piece stick = Piece.getPieces()[Piece.STICK];
+		Piece lying = stick.fastRotation();
+		assertSame(stick, lying.fastRotation());
+		assertEquals(4, lying.getWidth());
+
+		Board cave = caveBoard();
+		int n = gen.generate(cave, stick, 10);
+		assertTrue(foundRotation(0, 0));
+		assertTrue(foundRotation(1, 0));
+		assertTrue(foundRotation(1, 6));
+		for (int i = 0; i < n; i++) {
+			if (gen.getRotation(i) == 1 && gen.getY(i) == 0) {
+				assertSame(lying, gen.getPiece(i));
+				assertTrue(gen.getX(i) <= 2);
+			}
+			assertTrue(cave.canPlace(gen.getPiece(i), gen.getX(i), gen.getY(i)));
+			assertFalse(cave.canPlace(gen.getPiece(i), gen.getX(i), gen.getY(i) - 1));
+		}
+		// a straight drop of the lying stick never gets below the shelf
+		assertEquals(6, cave.dropHeight(lying, 0));
+
+		// Without its rotations the stick can't lie down in there
+		gen.generate(cave, new Piece(Piece.STICK_STR), 10);
+		assertTrue(foundRotation(0, 0));
+		assertFalse(foundRotation(1, 0));
+	}
+}
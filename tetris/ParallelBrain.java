@@ -0,0 +1,227 @@
+// ParallelBrain.java
+
+package tetris;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ A DefaultBrain that spreads bestMove() across cores.
+ The (rotation, x) plays are listed in the order DefaultBrain
+ tries them, then split in halves on a ForkJoinPool until there
+ is about one chunk of plays per pool thread. Each pool thread
+ keeps one board of its own, which a chunk refreshes with
+ copyFrom() and plays on, rating the plays with rateMove() -- so
+ a move costs a board copy per chunk, and no allocation once the
+ threads have their boards. If the plays make just one chunk
+ (a one-thread pool, or a narrow board), they are played on the
+ given board, on the calling thread.
+
+ The halves are combined keeping the earlier play unless the
+ later one scores strictly lower, which is the same tie-break
+ as DefaultBrain's loop -- so the move returned is always the
+ same one DefaultBrain would return. Subclasses may override
+ rateBoard() or rateMove() as usual, but they are called from
+ many threads at once, so they must not change any shared state.
+
+ bestMoves() instead splits the boards across the pool, each
+ board searched by the plain DefaultBrain loop, since with many
+ boards there is plenty to go around without splitting the plays.
+*/
+public class ParallelBrain extends DefaultBrain {
+    private final ForkJoinPool pool;
+    private final int grain;    // fewest plays worth a chunk of their own
+
+    // Each pool thread's board to search on
+    private final ThreadLocal<Board> boards = new ThreadLocal<Board>();
+
+    /**
+     Creates a brain that runs on the common ForkJoinPool.
+    */
+    public ParallelBrain() {
+        this(ForkJoinPool.commonPool(), 8);
+    }
+
+    /**
+     Creates a brain that runs on the given pool, splitting the
+     plays into about one chunk per pool thread, but no chunk
+     smaller than grain plays.
+    */
+    public ParallelBrain(ForkJoinPool pool, int grain) {
+        this.pool = pool;
+        this.grain = Math.max(1, grain);
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        // Allocate a move object if necessary
+        if (move==null) move = new Brain.Move();
+
+        board.commit();
+
+        // List the plays in DefaultBrain's order -- rotations, then x
+        int count = 0;
+        Piece current = piece;
+        do {
+            count += Math.max(0, board.getWidth() - current.getWidth()+1);
+            current = current.fastRotation();
+        } while (current != null && current != piece);
+
+        Piece[] pieces = new Piece[count];
+        int[] xs = new int[count];
+        int i = 0;
+        current = piece;
+        do {
+            final int xBound = board.getWidth() - current.getWidth()+1;
+            for (int x = 0; x<xBound; x++) {
+                pieces[i] = current;
+                xs[i] = x;
+                i++;
+            }
+            current = current.fastRotation();
+        } while (current != null && current != piece);
+
+        int chunk = Math.max(grain, (count + pool.getParallelism()-1) / pool.getParallelism());
+        Search search = new Search(board, pieces, xs, 0, count, limitHeight, chunk);
+        Brain.Move best = (count <= chunk) ? search.searchOn(board) : pool.invoke(search);
+
+        if (best.piece == null) return(null);    // could not find a play at all!
+        else {
+            move.x = best.x;
+            move.y = best.y;
+            move.piece = best.piece;
+            move.score = best.score;
+            return(move);
+        }
+    }
+
+    /**
+     Finds the best move on each board, the boards spread across
+     the pool. The boards must all be different objects.
+    */
+    public Brain.Move[] bestMoves(Board[] boards, Piece[] pieces, int[] limitHeights, int count, Brain.Move[] moves) {
+        moves = movesFor(count, moves);
+        pool.invoke(new BatchSearch(boards, pieces, limitHeights, moves, 0, count));
+        return(moves);
+    }
+
+    /*
+     Finds the moves for boards [lo, hi).
+    */
+    private class BatchSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Board[] boards;
+        private final Piece[] pieces;
+        private final int[] limitHeights;
+        private final Brain.Move[] moves;
+        private final int lo, hi;
+
+        BatchSearch(Board[] boards, Piece[] pieces, int[] limitHeights, Brain.Move[] moves, int lo, int hi) {
+            this.boards = boards;
+            this.pieces = pieces;
+            this.limitHeights = limitHeights;
+            this.moves = moves;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo <= grain) {
+                for (int i = lo; i<hi; i++) {
+                    Brain.Move move = ParallelBrain.super.bestMove(boards[i], pieces[i], limitHeights[i], moves[i]);
+                    if (move == null) moves[i].piece = null;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new BatchSearch(boards, pieces, limitHeights, moves, lo, mid),
+                new BatchSearch(boards, pieces, limitHeights, moves, mid, hi));
+        }
+    }
+
+    /*
+     Finds the best of plays [lo, hi), the first one on a tie.
+     Returns a move with a null piece if none of them can be played.
+    */
+    private class Search extends RecursiveTask<Brain.Move> {
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final Piece[] pieces;
+        private final int[] xs;
+        private final int lo, hi;
+        private final int limitHeight;
+        private final int chunk;    // most plays a task does itself
+
+        Search(Board board, Piece[] pieces, int[] xs, int lo, int hi, int limitHeight, int chunk) {
+            this.board = board;
+            this.pieces = pieces;
+            this.xs = xs;
+            this.lo = lo;
+            this.hi = hi;
+            this.limitHeight = limitHeight;
+            this.chunk = chunk;
+        }
+
+        protected Brain.Move compute() {
+            if (hi - lo <= chunk) return searchOn(threadBoard());
+
+            int mid = (lo + hi) >>> 1;
+            Search right = new Search(board, pieces, xs, mid, hi, limitHeight, chunk);
+            right.fork();
+            Brain.Move leftBest = new Search(board, pieces, xs, lo, mid, limitHeight, chunk).compute();
+            Brain.Move rightBest = right.join();
+
+            // Same tie-break as the sequential loop -- earlier wins
+            if (rightBest.score < leftBest.score) return rightBest;
+            return leftBest;
+        }
+
+        // This thread's board, made a copy of the board searched
+        private Board threadBoard() {
+            Board copy = boards.get();
+            if (copy == null || copy.getWidth() != board.getWidth() || copy.getHeight() != board.getHeight()) {
+                copy = new Board(board);
+                boards.set(copy);
+            }
+            else {
+                copy.copyFrom(board);
+            }
+            return copy;
+        }
+
+        // The DefaultBrain loop body, on the given board, which
+        // is left as it was
+        Brain.Move searchOn(Board copy) {
+            Brain.Move best = new Brain.Move();
+            best.score = 1e20;
+
+            for (int i = lo; i<hi; i++) {
+                Piece current = pieces[i];
+                int x = xs[i];
+                final int yBound = limitHeight - current.getHeight()+1;
+
+                int y = copy.dropHeight(current, x);
+                if (y<yBound) {    // piece does not stick up too far
+                    int result = copy.place(current, x, y);
+                    if (result <= Board.PLACE_ROW_FILLED) {
+                        if (result == Board.PLACE_ROW_FILLED) copy.clearRows();
+
+                        double score = rateMove(copy, current, x, y);
+
+                        if (score<best.score) {
+                            best.score = score;
+                            best.x = x;
+                            best.y = y;
+                            best.piece = current;
+                        }
+                    }
+
+                    copy.undo();    // back out that play, loop around for the next
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+// PersistentBoard.java
+package tetris;
+
+/**
+ * An immutable tetris board. Where Board is changed in place and backed out with
+ * undo(), a PersistentBoard is never changed -- with() returns a new board with
+ * the piece added and any filled rows cleared, and the old board stays valid.
+ * This lets search code keep many positions alive at once and hand them between
+ * threads without locking.
+ *
+ * <p>
+ * Rows are stored as bitmasks like Board, grouped into small chunks of
+ * CHUNK_ROWS rows. A new board copies the array of chunk pointers and only the
+ * chunks it changes, sharing every other chunk with its parent. Clearing rows
+ * rewrites only the chunks from the first cleared row up, the rows below it
+ * stay shared.
+ */
+public class PersistentBoard {
+	private static final int CHUNK_SHIFT = 2;
+	public static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+	private final int width;
+	private final int height;
+	private final long fullRow;
+
+	// chunks[y >> CHUNK_SHIFT][y & CHUNK_MASK] is the bitmask for row y.
+	// Chunks are shared between boards and never written once published.
+	private final long[][] chunks;
+	private final int[] heights;
+	private final int maxHeight;
+	private final int rowsCleared;
+
+	/**
+	 * Creates an empty board of the given width and height measured in blocks.
+	 * The width may be at most Board.MAX_WIDTH.
+	 */
+	public PersistentBoard(int width, int height) {
+		if (width < 1 || width > Board.MAX_WIDTH)
+			throw new RuntimeException("Bad board width:" + width);
+		this.width = width;
+		this.height = height;
+		fullRow = (width == Board.MAX_WIDTH) ? -1L : (1L << width) - 1;
+
+		// All rows start out sharing one empty chunk
+		chunks = new long[(height + CHUNK_MASK) >> CHUNK_SHIFT][];
+		long[] empty = new long[CHUNK_ROWS];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = empty;
+		}
+		heights = new int[width];
+		maxHeight = 0;
+		rowsCleared = 0;
+	}
+
+	/**
+	 * Creates a board with the same blocks as the given (mutable) board. Any full
+	 * rows are copied as they are -- with() only clears rows its piece fills, so
+	 * call clearRows() on the board first.
+	 */
+	public PersistentBoard(Board board) {
+		width = board.getWidth();
+		height = board.getHeight();
+		fullRow = (width == Board.MAX_WIDTH) ? -1L : (1L << width) - 1;
+
+		chunks = new long[(height + CHUNK_MASK) >> CHUNK_SHIFT][CHUNK_ROWS];
+		for (int y = 0; y < height; y++) {
+			chunks[y >> CHUNK_SHIFT][y & CHUNK_MASK] = board.getRowBits(y);
+		}
+		heights = new int[width];
+		for (int x = 0; x < width; x++) {
+			heights[x] = board.getColumnHeight(x);
+		}
+		maxHeight = board.getMaxHeight();
+		rowsCleared = 0;
+	}
+
+	private PersistentBoard(PersistentBoard parent, long[][] chunks, int[] heights, int maxHeight,
+			int rowsCleared) {
+		width = parent.width;
+		height = parent.height;
+		fullRow = parent.fullRow;
+		this.chunks = chunks;
+		this.heights = heights;
+		this.maxHeight = maxHeight;
+		this.rowsCleared = rowsCleared;
+	}
+
+	/**
+	 * Returns the width of the board in blocks.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the board in blocks.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the max column height present in the board. For an empty board this
+	 * is 0.
+	 */
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	/**
+	 * Returns the height of the given column -- i.e. the y value of the highest
+	 * block + 1. The height is 0 if the column contains no blocks.
+	 */
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+	/**
+	 * Returns the number of filled blocks in the given row.
+	 */
+	public int getRowWidth(int y) {
+		return Long.bitCount(getRowBits(y));
+	}
+
+	/**
+	 * Returns true if the given block is filled in the board. Blocks outside of the
+	 * valid width/height area always return true.
+	 */
+	public boolean getGrid(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height)
+			return true;
+		return (getRowBits(y) >>> x & 1) != 0;
+	}
+
+	/**
+	 * Returns the number of rows cleared by the with() that made this board.
+	 */
+	public int getRowsCleared() {
+		return rowsCleared;
+	}
+
+	/**
+	 * Returns the bitmask for the given row -- bit x is set if (x, y) is filled.
+	 */
+	long getRowBits(int y) {
+		return chunks[y >> CHUNK_SHIFT][y & CHUNK_MASK];
+	}
+
+	/**
+	 * Given a piece and an x, returns the y value where the piece would come to
+	 * rest if it were dropped straight down at that x.
+	 */
+	public int dropHeight(Piece piece, int x) {
+		int[] skirt = piece.getSkirt();
+		int max = 0;
+		for (int i = 0; i < skirt.length; i++) {
+			int ans = heights[x + i] - skirt[i];
+			if (ans > max) {
+				max = ans;
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns a new board with the piece added at x,y and any filled rows cleared.
+	 * This board is not changed. Returns null if the piece would be out of bounds
+	 * or overlap existing blocks.
+	 */
+	public PersistentBoard with(Piece piece, int x, int y) {
+		if (x < 0 || y < 0 || x + piece.getWidth() > width || y + piece.getHeight() > height) {
+			return null;
+		}
+		int[] masks = piece.getRowMasks();
+		for (int i = 0; i < masks.length; i++) {
+			if ((getRowBits(y + i) & ((long) masks[i] << x)) != 0) {
+				return null;
+			}
+		}
+
+		// Copy the chunk pointers, then the chunks the piece lands in
+		long[][] newChunks = chunks.clone();
+		int firstFull = -1;
+		for (int i = 0; i < masks.length; i++) {
+			int row = y + i;
+			long bits = getRowBits(row) | (long) masks[i] << x;
+			writableChunk(newChunks, row)[row & CHUNK_MASK] = bits;
+			if (bits == fullRow && firstFull < 0) {
+				firstFull = row;
+			}
+		}
+
+		int[] newHeights = heights.clone();
+		int newMaxHeight = maxHeight;
+		int[] tops = piece.getTops();
+		for (int i = 0; i < tops.length; i++) {
+			int top = y + tops[i];
+			if (top > newHeights[x + i]) {
+				newHeights[x + i] = top;
+				if (top > newMaxHeight) {
+					newMaxHeight = top;
+				}
+			}
+		}
+
+		if (firstFull < 0) {
+			return new PersistentBoard(this, newChunks, newHeights, newMaxHeight, 0);
+		}
+
+		// Shift the rows above the first full row down over the full ones.
+		// Chunks below firstFull are left shared.
+		int to = firstFull;
+		for (int from = firstFull + 1; from < newMaxHeight; from++) {
+			long bits = newChunks[from >> CHUNK_SHIFT][from & CHUNK_MASK];
+			if (bits != fullRow) {
+				writableChunk(newChunks, to)[to & CHUNK_MASK] = bits;
+				to++;
+			}
+		}
+		int cleared = newMaxHeight - to;
+		for (int row = to; row < newMaxHeight; row++) {
+			writableChunk(newChunks, row)[row & CHUNK_MASK] = 0;
+		}
+
+		newMaxHeight = 0;
+		for (int col = 0; col < width; col++) {
+			if (newHeights[col] > firstFull) {
+				int row = Math.min(newHeights[col], to) - 1;
+				while (row >= 0 && (newChunks[row >> CHUNK_SHIFT][row & CHUNK_MASK] >>> col & 1) == 0) {
+					row--;
+				}
+				newHeights[col] = row + 1;
+			}
+			if (newHeights[col] > newMaxHeight) {
+				newMaxHeight = newHeights[col];
+			}
+		}
+
+		return new PersistentBoard(this, newChunks, newHeights, newMaxHeight, cleared);
+	}
+
+	/*
+	 * Returns the chunk holding the given row in newChunks, first copying it if
+	 * it is still shared with this board.
+	 */
+	private long[] writableChunk(long[][] newChunks, int row) {
+		int c = row >> CHUNK_SHIFT;
+		if (newChunks[c] == chunks[c]) {
+			newChunks[c] = chunks[c].clone();
+		}
+		return newChunks[c];
+	}
+
+	/*
+	 * Renders the board state as a big String, suitable for printing, in the same
+	 * form as Board.toString().
+	 */
+	public String toString() {
+		StringBuilder buff = new StringBuilder();
+		for (int y = height - 1; y >= 0; y--) {
+			buff.append('|');
+			for (int x = 0; x < width; x++) {
+				if (getGrid(x, y))
+					buff.append('+');
+				else
+					buff.append(' ');
+			}
+			buff.append("|\n");
+		}
+		for (int x = 0; x < width + 2; x++)
+			buff.append('-');
+		return (buff.toString());
+	}
+}
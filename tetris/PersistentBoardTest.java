@@ -0,0 +1,76 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class PersistentBoardTest {
+	PersistentBoard empty, b;
+	Piece pyr1, stick;
+
+	// A 3X6 board like BoardTest, with a stick standing in column 0
+	@Before
+	public void setUp() throws Exception {
+		pyr1 = new Piece(Piece.PYRAMID_STR);
+		stick = new Piece(Piece.STICK_STR);
+
+		empty = new PersistentBoard(3, 6);
+		b = empty.with(stick, 0, 0);
+	}
+
+	// with() returns a new board and leaves the old one alone
+	@Test
+	public void testWith() {
+		assertEquals(0, empty.getMaxHeight());
+		assertFalse(empty.getGrid(0, 0));
+
+		assertEquals(4, b.getMaxHeight());
+		assertEquals(4, b.getColumnHeight(0));
+		assertEquals(0, b.getColumnHeight(1));
+		assertEquals(1, b.getRowWidth(3));
+		assertEquals(0, b.getRowsCleared());
+
+		PersistentBoard b2 = b.with(stick, 1, 0);
+		assertEquals(4, b2.getColumnHeight(1));
+		assertEquals(0, b.getColumnHeight(1));
+	}
+
+	// Out of bounds and overlapping placements return null
+	@Test
+	public void testWithErrors() {
+		assertNull(b.with(stick, 0, 0));
+		assertNull(b.with(stick, 3, 0));
+		assertNull(b.with(stick, 1, 3));
+		assertNotNull(b.with(stick, 1, 2));
+	}
+
+	// Filled rows are cleared as part of with()
+	@Test
+	public void testWithClears() {
+		PersistentBoard b2 = b.with(stick, 1, 0);
+		PersistentBoard b3 = b2.with(stick, 2, 1);
+		assertEquals(3, b3.getRowsCleared());
+		assertEquals(2, b3.getMaxHeight());
+		assertEquals(2, b3.getRowWidth(0));
+		assertEquals(1, b3.getRowWidth(1));
+		assertEquals(1, b3.getColumnHeight(0));
+		assertEquals(2, b3.getColumnHeight(2));
+
+		// b2 still has its two sticks
+		assertEquals(4, b2.getMaxHeight());
+		assertEquals(2, b2.getRowWidth(1));
+	}
+
+	// Copying a mutable board gives the same blocks
+	@Test
+	public void testFromBoard() {
+		Board board = new Board(3, 6);
+		board.place(pyr1, 0, 0);
+		board.clearRows();
+		board.commit();
+		PersistentBoard copy = new PersistentBoard(board);
+		assertEquals(board.toString(), copy.toString());
+		assertEquals(1, copy.getColumnHeight(1));
+		assertEquals(1, copy.getMaxHeight());
+	}
+}
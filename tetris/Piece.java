@@ -5,7 +5,9 @@ import java.util.*;
 
 /**
  An immutable representation of a tetris piece in a particular rotation.
- Each piece is defined by the blocks that make up its body.
+ Each piece is defined by the blocks that make up its body. Besides the
+ TPoint body, each piece carries primitive forms computed once when it is
+ made -- row masks, tops, skirt and packed cells -- for fast board code.
  
  Typical client code looks like...
  <pre>
@@ -24,11 +26,16 @@ public class Piece {
 	// the algorithms to be done.
 	private TPoint[] body;
 	private int[] skirt;
+	private int[] rowMasks;	// bit x of rowMasks[y] set if (x, y) is in the body
+	private int[] tops;		// for each x, the highest y in the body + 1
+	private long cells;		// body packed one byte per block, see getCells()
 	private int width;
 	private int height;
 	private Piece next; // "next" rotation
 
-	static private Piece[] pieces;	// singleton static array of first rotations
+	// singleton static array of first rotations, built when the class
+	// is loaded, so any number of threads may share it
+	static private final Piece[] pieces = makePieces();
 
 	/**
 	 Defines a new piece given a TPoint[] array of its body.
@@ -46,6 +53,9 @@ public class Piece {
 		//Calculate new piece's width and height
 		calculateMeasurement();
 		calculateSkirt();
+		calculateRowMasks();
+		calculateTops();
+		calculateCells();
 
 		// YOUR CODE HERE
 	}
@@ -93,6 +103,48 @@ public class Piece {
 	}
 
 
+	/*
+	 * This method calculates one bitmask per row of the piece,
+	 * bit x is set if the body has a block at (x, row).
+	 * Board shifts these by the placement x and ORs them into its rows.
+	 */
+	private void calculateRowMasks() {
+		rowMasks = new int[height];
+		
+		for(int i = 0; i < body.length; i++) {
+			TPoint currPoint = body[i];
+			rowMasks[currPoint.y] |= 1 << currPoint.x;
+		}
+	}
+	
+	/*
+	 * This method calculates tops array's values -- the mirror image of
+	 * the skirt, Board uses it to update column heights
+	 */
+	private void calculateTops() {
+		tops = new int[width];
+		
+		for(int i = 0; i < body.length; i++) {
+			TPoint currPoint = body[i];
+			if(currPoint.y + 1 > tops[currPoint.x]) {
+				tops[currPoint.x] = currPoint.y + 1;
+			}
+		}
+	}
+	
+	/*
+	 * This method packs the body into a long, one byte per block,
+	 * if it fits (at most 8 blocks with x and y below 16)
+	 */
+	private void calculateCells() {
+		cells = 0;
+		if(body.length > 8 || width > 16 || height > 16) return;
+		
+		for(int i = 0; i < body.length; i++) {
+			TPoint currPoint = body[i];
+			cells |= (long)(currPoint.y << 4 | currPoint.x) << (8 * i);
+		}
+	}
 
 	/**
 	 * Alternate constructor, takes a String with the x,y body points
@@ -135,6 +187,38 @@ public class Piece {
 		return skirt;
 	}
 
+	/**
+	 Returns a pointer to the piece's row masks, one per row
+	 from the bottom up. Bit x of a mask is set if the body
+	 has a block at that x in that row. Shifted left by the
+	 placement x, these line up with Board's row bits.
+	 The caller should not modify this array.
+	*/
+	public int[] getRowMasks() {
+		return rowMasks;
+	}
+
+	/**
+	 Returns a pointer to the piece's tops. For each x value
+	 across the piece, the tops give the highest y value in the
+	 body + 1 -- what the piece adds to a column's height.
+	 The caller should not modify this array.
+	*/
+	public int[] getTops() {
+		return tops;
+	}
+
+	/**
+	 Returns the body packed into a long, one byte per block in
+	 body order: block i is in bits 8*i .. 8*i+7, with x in the low
+	 4 bits and y in the high 4. The number of blocks is
+	 getBody().length. Pieces too big to pack (more than 8 blocks,
+	 or x or y of 16 or more) return 0.
+	*/
+	public long getCells() {
+		return cells;
+	}
+
 	
 	/**
 	 Returns a new piece that is 90 degrees counter-clockwise
@@ -191,10 +275,13 @@ public class Piece {
 		
 		if(this.body.length != other.body.length) return false;
 		
-		//Check all bricks and their points
+		//Check every brick is somewhere in the other body
 		for(int i = 0; i < body.length; i++) {
-			TPoint ot = body[i];
-			if(this.body[i].x != ot.x || this.body[i].y != ot.y) return false;
+			boolean found = false;
+			for(int j = 0; j < other.body.length && !found; j++) {
+				found = body[i].equals(other.body[j]);
+			}
+			if(!found) return false;
 		}
 		return true;
 	}
@@ -229,24 +316,25 @@ public class Piece {
 	 (provided code)
 	*/
 	public static Piece[] getPieces() {
-		// lazy evaluation -- create static array if needed
-		if (Piece.pieces==null) {
-			// use makeFastRotations() to compute all the rotations for each piece
-			Piece.pieces = new Piece[] {
-				makeFastRotations(new Piece(STICK_STR)),
-				makeFastRotations(new Piece(L1_STR)),
-				makeFastRotations(new Piece(L2_STR)),
-				makeFastRotations(new Piece(S1_STR)),
-				makeFastRotations(new Piece(S2_STR)),
-				makeFastRotations(new Piece(SQUARE_STR)),
-				makeFastRotations(new Piece(PYRAMID_STR)),
-			};
-		}
-		
-		
 		return Piece.pieces;
 	}
 	
+	/*
+	 Builds the pieces array, using makeFastRotations() to compute
+	 all the rotations for each piece.
+	*/
+	private static Piece[] makePieces() {
+		return new Piece[] {
+			makeFastRotations(new Piece(STICK_STR)),
+			makeFastRotations(new Piece(L1_STR)),
+			makeFastRotations(new Piece(L2_STR)),
+			makeFastRotations(new Piece(S1_STR)),
+			makeFastRotations(new Piece(S2_STR)),
+			makeFastRotations(new Piece(SQUARE_STR)),
+			makeFastRotations(new Piece(PYRAMID_STR)),
+		};
+	}
+	
 
 
 	/**
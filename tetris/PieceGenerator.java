@@ -0,0 +1,21 @@
+// PieceGenerator.java -- the interface for piece sequences
+
+package tetris;
+
+/**
+ A source of the sequence of pieces for a game, as indexes into
+ Piece.getPieces(). Implementations are not thread safe -- give
+ each thread (or game) its own, see SplittablePieceGenerator.
+*/
+public interface PieceGenerator {
+    /**
+     Returns the index of the next piece.
+    */
+    public int next();
+
+    /**
+     Fills out[offset] to out[offset+length-1] with the indexes of the
+     next length pieces, the same ones that many next() calls would give.
+    */
+    public void fill(byte[] out, int offset, int length);
+}
@@ -0,0 +1,77 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class PieceGeneratorTest {
+	// fill() gives what next() would
+	private void checkFill(PieceGenerator a, PieceGenerator b) {
+		byte[] bytes = new byte[1000];
+		a.fill(bytes, 10, 990);
+		for (int i = 10; i < 1000; i++) {
+			int piece = b.next();
+			assertEquals(piece, bytes[i]);
+			assertTrue(piece >= 0 && piece < 7);
+		}
+		assertEquals(0, bytes[0]);
+	}
+
+	@Test
+	public void testRandom() {
+		PieceGenerator generator = new RandomPieceGenerator(new Random(0));
+		Random random = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			assertEquals((int) (7 * random.nextDouble()), generator.next());
+		}
+		checkFill(new RandomPieceGenerator(new Random(1)), new RandomPieceGenerator(new Random(1)));
+	}
+
+	@Test
+	public void testSplittable() {
+		checkFill(new SplittablePieceGenerator(1), new SplittablePieceGenerator(1));
+		
+		// split streams are reproducible and differ from each other
+		SplittablePieceGenerator a = new SplittablePieceGenerator(2);
+		SplittablePieceGenerator b = new SplittablePieceGenerator(2);
+		byte[] one = new byte[50], two = new byte[50], other = new byte[50];
+		a.split().fill(one, 0, 50);
+		b.split().fill(two, 0, 50);
+		a.split().fill(other, 0, 50);
+		assertTrue(Arrays.equals(one, two));
+		assertFalse(Arrays.equals(one, other));
+	}
+
+	// Every run of 7 from the start has each piece once
+	@Test
+	public void testBag() {
+		checkFill(new BagPieceGenerator(3), new BagPieceGenerator(3));
+		
+		PieceGenerator bag = new BagPieceGenerator(4);
+		byte[] bytes = new byte[700];
+		bag.fill(bytes, 0, 700);
+		for (int run = 0; run < 100; run++) {
+			boolean[] seen = new boolean[7];
+			for (int i = 0; i < 7; i++) {
+				int piece = bytes[run * 7 + i];
+				assertFalse(seen[piece]);
+				seen[piece] = true;
+			}
+		}
+	}
+
+	// A game plays the generator's pieces
+	@Test
+	public void testGame() {
+		GameEngine game = new GameEngine(new BagPieceGenerator(5), 0);
+		PieceGenerator bag = new BagPieceGenerator(5);
+		Piece[] pieces = Piece.getPieces();
+		Brain brain = new DefaultBrain();
+		for (int i = 0; i < 20 && game.isGameOn(); i++) {
+			assertSame(pieces[bag.next()], game.getCurrentPiece());
+			game.playMove(brain);
+		}
+	}
+}
@@ -97,6 +97,21 @@ public class PieceTest {
 		assertTrue(Arrays.equals(new int[] {1, 0}, sRotated.getSkirt()));
 	}
 	
+	// Test the primitive forms -- row masks, tops and packed cells
+	@Test
+	public void testPacked() {
+		assertTrue(Arrays.equals(new int[] {7, 2}, pyr1.getRowMasks()));
+		assertTrue(Arrays.equals(new int[] {1, 2, 1}, pyr1.getTops()));
+		assertEquals(0x02110100L, pyr1.getCells());
+		
+		assertTrue(Arrays.equals(new int[] {2, 3, 1}, sRotated.getRowMasks()));
+		assertTrue(Arrays.equals(new int[] {3, 2}, sRotated.getTops()));
+		
+		assertTrue(Arrays.equals(new int[] {1, 1, 1, 1}, stick1.getRowMasks()));
+		assertTrue(Arrays.equals(new int[] {15}, stick2.getRowMasks()));
+		assertTrue(Arrays.equals(new int[] {1, 1, 1, 1}, stick2.getTops()));
+	}
+	
 	@Test
 	public void testWidth() {
 		testStickWidth();
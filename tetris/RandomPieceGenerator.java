@@ -0,0 +1,37 @@
+// RandomPieceGenerator.java
+
+package tetris;
+
+import java.util.Random;
+
+/**
+ Pieces picked uniformly by a java.util.Random, one nextDouble()
+ a piece. JTetris plays with one of these, so a GameEngine seeded
+ the same way gets the same pieces as JTetris.
+*/
+public class RandomPieceGenerator implements PieceGenerator {
+    private final Random random;
+    private final int count;
+
+    /**
+     Picks among the 7 standard pieces.
+    */
+    public RandomPieceGenerator(Random random) {
+        this(random, Piece.getPieces().length);
+    }
+
+    public RandomPieceGenerator(Random random, int count) {
+        this.random = random;
+        this.count = count;
+    }
+
+    public int next() {
+        return (int) (count * random.nextDouble());
+    }
+
+    public void fill(byte[] out, int offset, int length) {
+        for (int i = offset; i<offset+length; i++) {
+            out[i] = (byte) (count * random.nextDouble());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+// ReachableBrain.java
+
+package tetris;
+
+/**
+ A DefaultBrain that tries every placement MoveGenerator finds,
+ not just the straight drops -- so it can slide a piece under an
+ overhang or rotate it down in the stack, as a player could.
+ Every placement is rated with rateMove(), so subclasses rate
+ boards the same way as DefaultBrain's.
+
+ The piece is searched from where JTetris adds a new piece (top
+ center of the board), so every move returned can really be
+ played from there. Not thread safe; use one per thread.
+*/
+public class ReachableBrain extends DefaultBrain {
+    private final MoveGenerator generator = new MoveGenerator();
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        if (move==null) move = new Brain.Move();
+
+        board.commit();
+        int n = generator.generate(board, piece, limitHeight);
+
+        double bestScore = 1e20;
+        int best = -1;
+        for (int i = 0; i<n; i++) {
+            Piece current = generator.getPiece(i);
+            int x = generator.getX(i);
+            int y = generator.getY(i);
+            int result = board.place(current, x, y);
+            if (result <= Board.PLACE_ROW_FILLED) {
+                if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+
+                double score = rateMove(board, current, x, y);
+                if (score<bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            board.undo();
+        }
+
+        if (best < 0) return(null);
+        move.x = generator.getX(best);
+        move.y = generator.getY(best);
+        move.piece = generator.getPiece(best);
+        move.score = bestScore;
+        return(move);
+    }
+}
@@ -0,0 +1,187 @@
+// ReplayReader.java
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ Plays back a replay log written by ReplayWriter (see there for the
+ format), straight out of memory-mapped windows of the file. A window
+ holds WINDOW_RECORDS moves (768MB), and the next one is mapped when
+ play reaches it, so logs of any size can be read.
+
+ next() plays the next move into the board with place() and
+ clearRows(), starting a fresh board at the first move of each game.
+ seek() goes to any move number: it backs up to the first move of
+ that move's game and plays forward from there, so it costs at most
+ one game's moves.
+
+ The reader sees the moves that were in the log when it was made;
+ moves appended later are not seen. Not thread safe -- use one per thread.
+*/
+public class ReplayReader {
+	// Moves mapped at a time
+	static final long WINDOW_RECORDS = 1L << 28;
+
+	private final Path file;
+	private final long windowRecords;
+	private MappedByteBuffer map;	// the window holding the last record read
+	private long windowStart;	// its first move
+	private final Piece[] pieces = Piece.getPieces();
+	private final Board board;
+	private final Board empty;
+	private final long moveCount;
+
+	private long position;		// the next move to play
+
+	// The last move played
+	private Piece piece;
+	private int x;
+	private int y;
+	private int rowsCleared;
+
+	public ReplayReader(Path file) throws IOException {
+		this(file, WINDOW_RECORDS);
+	}
+
+	/*
+	 A reader mapping windowRecords moves at a time, so tests
+	 can cross windows with small logs.
+	*/
+	ReplayReader(Path file, long windowRecords) throws IOException {
+		this.file = file;
+		this.windowRecords = windowRecords;
+		ByteBuffer header = ByteBuffer.allocate(ReplayWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		long size;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			size = channel.size();
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+		}
+		header.flip();
+		if (header.remaining() < ReplayWriter.HEADER_SIZE || header.getInt(0) != ReplayWriter.MAGIC
+				|| header.getInt(4) != ReplayWriter.VERSION) {
+			throw new RuntimeException("Not a replay log: " + file);
+		}
+		int width = header.getShort(8);
+		int height = header.getShort(10);
+		board = new Board(width, height);
+		empty = new Board(width, height);
+		moveCount = (size - ReplayWriter.HEADER_SIZE) / ReplayWriter.RECORD_SIZE;
+	}
+
+	/**
+	 Returns the number of moves in the log, over all its games.
+	*/
+	public long getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 Returns the number of the next move next() will play.
+	*/
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 Returns the board as it is after the moves played so far.
+	 It belongs to the reader, so should only be looked at.
+	*/
+	public Board getBoard() {
+		return board;
+	}
+
+	public boolean hasNext() {
+		return position < moveCount;
+	}
+
+	/**
+	 Plays the next move. Returns true if it was the first move
+	 of a game.
+	*/
+	public boolean next() {
+		if (position >= moveCount) throw new RuntimeException("No more moves");
+		int bits = record(position++);
+		boolean first = (bits & ReplayWriter.NEW_GAME) != 0;
+		if (first) board.copyFrom(empty);
+
+		piece = pieces[bits & 7];
+		for (int r = (bits >>> 3) & 3; r > 0; r--) piece = piece.fastRotation();
+		x = (bits >>> 5) & 63;
+		y = (bits >>> 11) & 63;
+
+		if (board.place(piece, x, y) > Board.PLACE_ROW_FILLED) {
+			throw new RuntimeException("Replay move " + (position - 1) + " does not fit");
+		}
+		rowsCleared = board.clearRows();
+		board.commit();
+		return first;
+	}
+
+	/**
+	 Sets the board to how next() would have left it after playing
+	 moves 0 to move-1, so the next move it plays is the given one.
+	*/
+	public void seek(long move) {
+		if (move < 0 || move > moveCount) throw new RuntimeException("No move " + move);
+
+		// The first move of the game holding move-1
+		long start = Math.max(0, move - 1);
+		while (start > 0 && (record(start) & ReplayWriter.NEW_GAME) == 0) start--;
+
+		// Play on from here if we're in that game already
+		if (position < start || position > move) {
+			board.copyFrom(empty);
+			position = start;
+		}
+		while (position < move) next();
+	}
+
+	private int record(long move) {
+		if (map == null || move < windowStart || move >= windowStart + windowRecords) map(move - move % windowRecords);
+		int at = (int) ((move - windowStart) * ReplayWriter.RECORD_SIZE);
+		return (map.get(at) & 0xFF) | (map.get(at + 1) & 0xFF) << 8 | (map.get(at + 2) & 0xFF) << 16;
+	}
+
+	/*
+	 Maps the window of moves starting at the given one.
+	*/
+	private void map(long start) {
+		long records = Math.min(windowRecords, moveCount - start);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			map = channel.map(FileChannel.MapMode.READ_ONLY,
+				ReplayWriter.HEADER_SIZE + start * ReplayWriter.RECORD_SIZE, records * ReplayWriter.RECORD_SIZE);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Could not map replay log " + file, e);
+		}
+		windowStart = start;
+	}
+
+	/**
+	 The last move played by next().
+	*/
+	public Piece getPiece() {
+		return piece;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 Returns the rows the last move cleared.
+	*/
+	public int getRowsCleared() {
+		return rowsCleared;
+	}
+}
@@ -0,0 +1,137 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import org.junit.*;
+
+public class ReplayTest {
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("replay", ".log");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	// Records some brain games, keeping the board after every move.
+	// The brain sees each board before its move, so the board after
+	// a move is the one the next call sees, or the game's last board.
+	private List<Board> record(int games, int seed) throws Exception {
+		final List<Board> boards = new ArrayList<Board>();
+		ReplayWriter writer = new ReplayWriter(file.toPath(), GameEngine.WIDTH, GameEngine.HEIGHT + GameEngine.TOP_SPACE);
+		Brain brain = new DefaultBrain() {
+			public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+				boards.add(new Board(board));
+				return super.bestMove(board, piece, limitHeight, move);
+			}
+		};
+		for (int g = 0; g < games; g++) {
+			GameEngine game = new GameEngine(new Random(seed + g));
+			game.setRecorder(writer);
+			int first = boards.size();
+			game.runGame(brain, 0);
+			boards.remove(first);	// the empty board before the first move
+			boards.add(new Board(game.getBoard()));
+		}
+		writer.close();
+		return boards;
+	}
+
+	// Playing the log back gives the same boards, a fresh one each game
+	@Test
+	public void testPlayback() throws Exception {
+		List<Board> boards = record(3, 0);
+		ReplayReader reader = new ReplayReader(file.toPath());
+		assertEquals(boards.size(), reader.getMoveCount());
+		
+		int games = 0;
+		for (int i = 0; reader.hasNext(); i++) {
+			if (reader.next()) games++;
+			assertEquals(boards.get(i), reader.getBoard());
+		}
+		assertEquals(3, games);
+	}
+
+	// Seeking anywhere, forwards or back, gives the board before that move
+	@Test
+	public void testSeek() throws Exception {
+		List<Board> boards = record(3, 10);
+		ReplayReader reader = new ReplayReader(file.toPath());
+		Random random = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			int move = random.nextInt(boards.size());
+			reader.seek(move + 1);
+			assertEquals(move + 1, reader.getPosition());
+			assertEquals(boards.get(move), reader.getBoard());
+		}
+		reader.seek(0);
+		assertEquals(new Board(GameEngine.WIDTH, GameEngine.HEIGHT + GameEngine.TOP_SPACE), reader.getBoard());
+	}
+
+	// A second writer appends to the log
+	@Test
+	public void testAppend() throws Exception {
+		int first = record(1, 0).size();
+		int second = record(2, 5).size();
+		ReplayReader reader = new ReplayReader(file.toPath());
+		assertEquals(first + second, reader.getMoveCount());
+		
+		try {
+			new ReplayWriter(file.toPath(), 8, 8);
+			fail();
+		}
+		catch (RuntimeException expected) {
+		}
+	}
+
+	// Small windows give the same playback and seeks as one big one
+	@Test
+	public void testWindows() throws Exception {
+		List<Board> boards = record(2, 20);
+		ReplayReader reader = new ReplayReader(file.toPath(), 4);
+		for (int i = 0; reader.hasNext(); i++) {
+			reader.next();
+			assertEquals(boards.get(i), reader.getBoard());
+		}
+		Random random = new Random(1);
+		for (int i = 0; i < 50; i++) {
+			int move = random.nextInt(boards.size());
+			reader.seek(move + 1);
+			assertEquals(boards.get(move), reader.getBoard());
+		}
+	}
+
+	// Reopening a log drops a partly written last record, and
+	// moves appended after it read back in line
+	@Test
+	public void testTornRecord() throws Exception {
+		int first = record(1, 0).size();
+		long size = file.length();
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.seek(size);
+		raw.write(new byte[] { 7, 7 });
+		raw.close();
+
+		ReplayWriter writer = new ReplayWriter(file.toPath(), GameEngine.WIDTH, GameEngine.HEIGHT + GameEngine.TOP_SPACE);
+		assertEquals(size, file.length());
+		writer.startGame();
+		writer.record(Piece.STICK, 0, 0, 0);
+		writer.close();
+
+		ReplayReader reader = new ReplayReader(file.toPath());
+		assertEquals(first + 1, reader.getMoveCount());
+		reader.seek(first);
+		assertTrue(reader.next());
+		assertEquals(4, reader.getBoard().getColumnHeight(0));
+		assertFalse(reader.hasNext());
+	}
+}
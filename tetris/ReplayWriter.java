@@ -0,0 +1,131 @@
+// ReplayWriter.java
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ Appends the moves of games to a replay log, for ReplayReader
+ to play back.
+
+ The log is a 12 byte header -- the magic number, a version, and
+ the board width and height -- then one 3 byte record per piece
+ played, little-endian:
+ <pre>
+ bits 0-2    piece index in Piece.getPieces()
+ bits 3-4    rotation, in fastRotation() steps from that piece
+ bits 5-10   x
+ bits 11-16  y
+ bit 17      set on the first move of each game
+ </pre>
+ Every record is the same size, so move n is at 12 + 3n, and a
+ game is just the moves from one first-move bit to the next.
+ Records are buffered; flush() or close() writes them out.
+ Not thread safe -- use one per thread (and file).
+*/
+public class ReplayWriter {
+	static final int MAGIC = 0x4C505254;	// "TRPL"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 12;
+	static final int RECORD_SIZE = 3;
+	static final int NEW_GAME = 1 << 17;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 16384).order(ByteOrder.LITTLE_ENDIAN);
+	private final Piece[] pieces = Piece.getPieces();
+	private final int width;
+	private final int height;
+	private boolean newGame;
+
+	/**
+	 Opens the log for appending, writing the header if the file
+	 is new. An existing log must be for the same size of board.
+	*/
+	public ReplayWriter(Path file, int width, int height) throws IOException {
+		if (width > 64 || height > 64) throw new RuntimeException("Board too big to replay");
+		this.width = width;
+		this.height = height;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		if (channel.size() == 0) {
+			header.putInt(MAGIC).putInt(VERSION).putShort((short) width).putShort((short) height);
+			header.flip();
+			while (header.hasRemaining()) channel.write(header);
+		}
+		else {
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION
+					|| header.getShort() != width || header.getShort() != height) {
+				channel.close();
+				throw new RuntimeException("Not a replay log for a " + width + "x" + height + " board: " + file);
+			}
+			// drop any partly written last record
+			long size = channel.size();
+			channel.truncate(size - (size - HEADER_SIZE) % RECORD_SIZE);
+		}
+		channel.position(channel.size());
+	}
+
+	/**
+	 Marks the next move recorded as the first of a new game.
+	*/
+	public void startGame() {
+		newGame = true;
+	}
+
+	/**
+	 Records the piece played at x,y. The piece must be one of the
+	 rotations of a piece in Piece.getPieces().
+	*/
+	public void record(Piece piece, int x, int y) throws IOException {
+		for (int i = 0; i < pieces.length; i++) {
+			Piece current = pieces[i];
+			int rotation = 0;
+			do {
+				if (current == piece) {
+					record(i, rotation, x, y);
+					return;
+				}
+				current = current.fastRotation();
+				rotation++;
+			} while (current != pieces[i] && rotation < 4);
+		}
+		throw new RuntimeException("Not a standard piece");
+	}
+
+	/**
+	 Records a move given as a piece index, rotation and position.
+	*/
+	public void record(int pieceIndex, int rotation, int x, int y) throws IOException {
+		if (pieceIndex < 0 || pieceIndex >= pieces.length || rotation < 0 || rotation > 3
+				|| x < 0 || x >= width || y < 0 || y >= height) {
+			throw new RuntimeException("Move out of range");
+		}
+		int bits = pieceIndex | rotation << 3 | x << 5 | y << 11 | (newGame ? NEW_GAME : 0);
+		newGame = false;
+
+		if (buffer.remaining() < RECORD_SIZE) flush();
+		buffer.put((byte) bits).put((byte) (bits >>> 8)).put((byte) (bits >>> 16));
+	}
+
+	/**
+	 Writes out the buffered records.
+	*/
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+}
@@ -0,0 +1,378 @@
+// SessionServer.java
+
+package tetris;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ Serves Tetris games to clients on a local socket, many games at once.
+
+ Each connection plays one game, a GameEngine, with a line-based text
+ protocol. The client sends one command a line, and the server replies
+ with one line, "OK ..." or "ERROR message":
+ <pre>
+ NEW [seed]      starts a game (seeded, or not), replies OK
+ LEFT RIGHT ROTATE DROP DOWN
+                 moves the piece, as the JTetris keys do, replies OK
+ BRAIN           has a DefaultBrain place the piece, replies OK
+ STATE           replies OK on|over count score x y board, where board
+                 is Board.encode() in Base64, the falling piece included
+ QUIT            closes the connection
+ </pre>
+ A line may be at most MAX_LINE bytes, newline included. A longer one
+ gets "ERROR line too long" and the connection is closed.
+
+ All the connections are served by one thread, from a Selector, so a
+ session costs a game and two small fixed buffers rather than a
+ thread, on any JDK. Commands are run in turn as their lines come in;
+ the slowest, BRAIN, is one DefaultBrain search. A client that stops
+ reading its replies is not read from either until it catches up, so
+ a session never buffers more than its two buffers hold.
+
+ Gravity is a DOWN every gravityMillis (none if 0). All the games'
+ gravity runs from one shared TimerWheel rather than a timer per game.
+ The wheel only hands the DOWN over to the serving thread, so games
+ are only ever changed by that one thread and need no locks.
+ At most maxSessions connections are served at once; any more are
+ refused with an ERROR line. close() closes every connection.
+*/
+public class SessionServer {
+    // Longest command line, newline included
+    public static final int MAX_LINE = 128;
+
+    // Longest reply, newline included -- a STATE for a GameEngine
+    // board is about 130 bytes
+    private static final int MAX_REPLY = 256;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final TimerWheel wheel;
+    private final long gravityMillis;
+    private final int maxSessions;
+    private final Thread loop;
+    private volatile boolean running = true;
+    private volatile int sessionCount;    // only changed by the loop
+
+    // Gravity due, handed over from the wheel's thread
+    private final ConcurrentLinkedQueue<Gravity> falling = new ConcurrentLinkedQueue<Gravity>();
+
+    // Shared by all the sessions, as only the loop thread uses them
+    private final Brain brain = new DefaultBrain();
+    private final ByteBuffer encoded = ByteBuffer.allocate(MAX_REPLY);
+
+    /**
+     Starts a server on the loopback address at the given port
+     (0 for any free port, see getPort()).
+    */
+    public SessionServer(int port, long gravityMillis, int maxSessions) throws IOException {
+        this.gravityMillis = gravityMillis;
+        this.maxSessions = maxSessions;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1000);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        wheel = new TimerWheel(10, 512);
+        loop = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        }, "SessionServer");
+        loop.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     Returns the number of connections being served.
+    */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     Stops gravity and the serving thread, and closes the server
+     socket and every open connection. Returns once they are closed.
+    */
+    public void close() throws IOException {
+        running = false;
+        wheel.stop();
+        selector.wakeup();
+        try {
+            loop.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+
+                Gravity due;
+                while ((due = falling.poll()) != null) {
+                    due.fall();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Session session = (Session) key.attachment();
+                    try {
+                        if (key.isReadable()) session.read();
+                        else if (key.isWritable()) session.serve();
+                    }
+                    catch (IOException e) {
+                        session.close();    // the client went away
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            if (running) e.printStackTrace();
+        }
+        finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Session) ((Session) key.attachment()).close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (sessionCount >= maxSessions) {
+                try {
+                    channel.write(ByteBuffer.wrap("ERROR server full\n".getBytes(StandardCharsets.UTF_8)));
+                }
+                finally {
+                    channel.close();
+                }
+                continue;
+            }
+            channel.configureBlocking(false);
+            Session session = new Session(channel);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            sessionCount++;
+        }
+    }
+
+    /*
+     A game's gravity. The wheel runs it on its own thread, which just
+     queues it for the loop; fall() then does the DOWN on the loop.
+     NEW makes a new one, so one queued for an old game does nothing.
+    */
+    private class Gravity implements Runnable {
+        private final Session session;
+        private TimerWheel.Timeout timeout;
+
+        Gravity(Session session) {
+            this.session = session;
+        }
+
+        public void run() {
+            falling.add(this);
+            selector.wakeup();
+        }
+
+        void fall() {
+            GameEngine game = session.game;
+            if (session.gravity != this || game == null || !game.isGameOn()) return;
+            game.tick(GameEngine.DOWN);
+            if (game.isGameOn()) timeout = wheel.schedule(this, gravityMillis);
+        }
+
+        void cancel() {
+            if (timeout != null) timeout.cancel();
+        }
+    }
+
+    /*
+     One connection and its game. Only used on the loop thread.
+    */
+    private class Session {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private final ByteBuffer out = ByteBuffer.allocate(2 * MAX_REPLY);
+        private GameEngine game;
+        private Gravity gravity;
+        private boolean closing;    // close once the replies are sent
+        private boolean closed;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            serve();
+        }
+
+        /*
+         Runs the whole lines read so far, as long as there is room
+         for their replies, and sends the replies. If the client is
+         not taking them, waits to write before reading any more.
+        */
+        void serve() throws IOException {
+            in.flip();
+            int start = 0;
+            int end;
+            boolean waiting = false;
+            while (!closing && (end = lineEnd(start)) >= 0) {
+                if (out.remaining() < MAX_REPLY && !flush()) {
+                    waiting = true;
+                    break;
+                }
+                run(new String(in.array(), start, end - start, StandardCharsets.UTF_8));
+                start = end + 1;
+            }
+            in.position(start);
+            in.compact();
+            if (!closing && !waiting && !in.hasRemaining()) {
+                reply("ERROR line too long");
+                closing = true;
+            }
+
+            if (flush()) {
+                if (closing) close();
+                else key.interestOps(SelectionKey.OP_READ);
+            }
+            else {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        // Index of the next newline in the flipped input from start, or -1
+        private int lineEnd(int start) {
+            for (int i = start; i < in.limit(); i++) {
+                if (in.get(i) == '\n') return i;
+            }
+            return -1;
+        }
+
+        // Writes what it can of the replies; true if they all went
+        private boolean flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            return out.position() == 0;
+        }
+
+        private void reply(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.put(bytes, 0, Math.min(bytes.length, MAX_REPLY - 1));
+            out.put((byte) '\n');
+        }
+
+        private void run(String line) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].equalsIgnoreCase("QUIT")) {
+                closing = true;
+                return;
+            }
+            try {
+                reply(command(words));
+            }
+            catch (RuntimeException e) {
+                reply("ERROR " + e.getMessage());
+            }
+        }
+
+        private String command(String[] words) {
+            String verb = words[0].toUpperCase();
+            if (verb.equals("NEW")) {
+                Random random = (words.length > 1) ? new Random(Long.parseLong(words[1])) : new Random();
+                game = new GameEngine(random);
+                if (gravity != null) gravity.cancel();
+                gravity = null;
+                if (gravityMillis > 0) {
+                    gravity = new Gravity(this);
+                    gravity.timeout = wheel.schedule(gravity, gravityMillis);
+                }
+                return "OK";
+            }
+            if (game == null) return "ERROR no game, send NEW";
+
+            if (verb.equals("LEFT")) game.tick(GameEngine.LEFT);
+            else if (verb.equals("RIGHT")) game.tick(GameEngine.RIGHT);
+            else if (verb.equals("ROTATE")) game.tick(GameEngine.ROTATE);
+            else if (verb.equals("DROP")) game.tick(GameEngine.DROP);
+            else if (verb.equals("DOWN")) game.tick(GameEngine.DOWN);
+            else if (verb.equals("BRAIN")) game.playMove(brain);
+            else if (verb.equals("STATE")) return state();
+            else return "ERROR unknown command " + words[0];
+            return "OK";
+        }
+
+        private String state() {
+            Board board = game.getBoard();
+            encoded.clear();
+            board.encode(encoded);
+            encoded.flip();
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return "OK " + (game.isGameOn() ? "on" : "over") + " " + game.getCount() + " " + game.getScore()
+                + " " + game.getCurrentX() + " " + game.getCurrentY() + " " + Base64.getEncoder().encodeToString(bytes);
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            if (gravity != null) gravity.cancel();
+            gravity = null;
+            game = null;
+            key.cancel();
+            try {
+                channel.close();
+            }
+            catch (IOException ignored) {
+            }
+            sessionCount--;
+        }
+    }
+
+    /**
+     Runs a server. Usage: SessionServer [port [gravityMillis [maxSessions]]]
+     Each session holds a socket, so the process's open file limit
+     must allow for maxSessions of them.
+    */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7777;
+        long gravity = (args.length > 1) ? Long.parseLong(args[1]) : 400;
+        int maxSessions = (args.length > 2) ? Integer.parseInt(args[2]) : 50000;
+        SessionServer server = new SessionServer(port, gravity, maxSessions);
+        System.out.println("Serving on port " + server.getPort());
+    }
+}
@@ -0,0 +1,138 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.*;
+
+public class SessionServerTest {
+	SessionServer server;
+
+	@After
+	public void tearDown() throws Exception {
+		if (server != null) server.close();
+	}
+
+	private static class Client implements Closeable {
+		Socket socket;
+		BufferedReader in;
+		PrintWriter out;
+
+		Client(int port) throws IOException {
+			socket = new Socket("127.0.0.1", port);
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+		}
+
+		String send(String command) throws IOException {
+			out.println(command);
+			return in.readLine();
+		}
+
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	// A brain game over the socket ends just as the same game on
+	// a GameEngine does
+	@Test
+	public void testBrainGame() throws Exception {
+		server = new SessionServer(0, 0, 10);
+		try (Client client = new Client(server.getPort())) {
+			assertTrue(client.send("STATE").startsWith("ERROR"));
+			assertEquals("OK", client.send("NEW 3"));
+			assertTrue(client.send("FLY").startsWith("ERROR"));
+			String state = client.send("STATE");
+			while (state.startsWith("OK on")) {
+				assertEquals("OK", client.send("BRAIN"));
+				state = client.send("STATE");
+			}
+			
+			GameEngine game = new GameEngine(new java.util.Random(3));
+			game.runGame(new DefaultBrain(), 0);
+			String[] words = state.split(" ");
+			assertEquals("over", words[1]);
+			assertEquals(game.getCount(), Integer.parseInt(words[2]));
+			assertEquals(game.getScore(), Integer.parseInt(words[3]));
+			Board board = new Board(GameEngine.WIDTH, GameEngine.HEIGHT + GameEngine.TOP_SPACE);
+			board.decode(ByteBuffer.wrap(Base64.getDecoder().decode(words[6])));
+			assertEquals(game.getBoard(), board);
+		}
+	}
+
+	// Gravity brings the piece down with no commands sent, and
+	// sessions past the limit are turned away
+	@Test
+	public void testGravity() throws Exception {
+		server = new SessionServer(0, 10, 1);
+		try (Client client = new Client(server.getPort())) {
+			assertEquals("OK", client.send("NEW 1"));
+			int y = Integer.parseInt(client.send("STATE").split(" ")[5]);
+			Thread.sleep(200);
+			assertTrue(Integer.parseInt(client.send("STATE").split(" ")[5]) < y);
+			assertEquals(1, server.getSessionCount());
+			
+			try (Client other = new Client(server.getPort())) {
+				assertEquals("ERROR server full", other.in.readLine());
+			}
+		}
+	}
+
+	// A line longer than MAX_LINE, newline or not, gets an ERROR and
+	// the connection closed, and the session is freed
+	@Test
+	public void testLongLine() throws Exception {
+		server = new SessionServer(0, 0, 1);
+		try (Client client = new Client(server.getPort())) {
+			client.socket.setSoTimeout(5000);
+			assertEquals("OK", client.send("NEW 1"));
+			char[] junk = new char[SessionServer.MAX_LINE * 4];
+			java.util.Arrays.fill(junk, 'A');
+			client.out.print(junk);
+			client.out.flush();
+			assertEquals("ERROR line too long", client.in.readLine());
+			assertNull(client.in.readLine());
+		}
+		try (Client client = new Client(server.getPort())) {
+			client.socket.setSoTimeout(5000);
+			assertEquals("OK", client.send("NEW 2"));
+		}
+	}
+
+	// Commands sent together are all answered, in order
+	@Test
+	public void testPipelined() throws Exception {
+		server = new SessionServer(0, 0, 1);
+		try (Client client = new Client(server.getPort())) {
+			client.socket.setSoTimeout(5000);
+			StringBuilder commands = new StringBuilder("NEW 4\n");
+			for (int i = 0; i < 50; i++) commands.append("STATE\nLEFT\n");
+			client.out.print(commands);
+			client.out.flush();
+			assertEquals("OK", client.in.readLine());
+			for (int i = 0; i < 50; i++) {
+				assertTrue(client.in.readLine().startsWith("OK on"));
+				assertEquals("OK", client.in.readLine());
+			}
+		}
+	}
+
+	// close() closes the connections still open
+	@Test
+	public void testClose() throws Exception {
+		server = new SessionServer(0, 10, 10);
+		try (Client client = new Client(server.getPort())) {
+			client.socket.setSoTimeout(5000);
+			assertEquals("OK", client.send("NEW 1"));
+			server.close();
+			server = null;
+			assertNull(client.in.readLine());
+		}
+	}
+}
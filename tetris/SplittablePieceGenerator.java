@@ -0,0 +1,46 @@
+// SplittablePieceGenerator.java
+
+package tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ Pieces picked uniformly by a SplittableRandom. It is faster than
+ java.util.Random, which is built for sharing between threads, and
+ split() gives a new generator with its own stream, so parallel games
+ can each have one, reproducible from the one seed they started from.
+*/
+public class SplittablePieceGenerator implements PieceGenerator {
+    private final SplittableRandom random;
+    private final int count;
+
+    /**
+     Picks among the 7 standard pieces, seeded.
+    */
+    public SplittablePieceGenerator(long seed) {
+        this(new SplittableRandom(seed), Piece.getPieces().length);
+    }
+
+    public SplittablePieceGenerator(SplittableRandom random, int count) {
+        this.random = random;
+        this.count = count;
+    }
+
+    public int next() {
+        return random.nextInt(count);
+    }
+
+    public void fill(byte[] out, int offset, int length) {
+        for (int i = offset; i<offset+length; i++) {
+            out[i] = (byte) random.nextInt(count);
+        }
+    }
+
+    /**
+     Returns a new generator whose stream is independent of this one's.
+     Splitting the same way from the same seed gives the same streams.
+    */
+    public SplittablePieceGenerator split() {
+        return new SplittablePieceGenerator(random.split(), count);
+    }
+}
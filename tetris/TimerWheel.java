@@ -0,0 +1,156 @@
+// TimerWheel.java
+
+package tetris;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ One thread that runs many timed tasks -- a hashed timer wheel.
+
+ Time is cut into ticks of tickMillis. The wheel is a ring of
+ slots, one per tick; a task due in n ticks goes in the slot n
+ ahead of the current one, noting how many more turns of the wheel
+ it must wait if n is more than the ring size. Each tick the
+ thread runs the tasks in the next slot that are due. Scheduling
+ and cancelling are O(1), however many tasks are waiting, and a
+ task costs one small Timeout object while it waits.
+
+ Tasks run on the wheel's thread, so they should be quick, and a
+ task may fire up to two ticks late. Any thread may schedule.
+*/
+public class TimerWheel {
+    /**
+     A scheduled task, which may be cancelled until it runs.
+    */
+    public static class Timeout {
+        private final Runnable task;
+        private final long ticks;
+        private long rounds;
+        private volatile boolean cancelled;
+        private Timeout next;    // in its slot
+
+        private Timeout(Runnable task, long ticks) {
+            this.task = task;
+            this.ticks = ticks;
+        }
+
+        /**
+         Stops the task from running, if it hasn't yet.
+        */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickNanos;
+    private final Timeout[] slots;    // heads of the slot lists
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long tick;                // ticks done, only used on the thread
+
+    /**
+     Creates and starts a wheel of slotCount slots (rounded up to a
+     power of 2), each tickMillis long.
+    */
+    public TimerWheel(long tickMillis, int slotCount) {
+        if (tickMillis < 1 || slotCount < 1) throw new RuntimeException("Bad wheel size");
+        tickNanos = tickMillis * 1000000L;
+        int size = 1;
+        while (size < slotCount) size <<= 1;
+        slots = new Timeout[size];
+        thread = new Thread(new Runnable() {
+            public void run() {
+                turn();
+            }
+        }, "TimerWheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     Runs the task once, after delayMillis, on the wheel's thread.
+    */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis * 1000000L + tickNanos - 1) / tickNanos);
+        Timeout timeout = new Timeout(task, ticks);
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     Stops the wheel. Tasks still waiting never run.
+    */
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void turn() {
+        final int mask = slots.length - 1;
+        long start = System.nanoTime();
+        while (running) {
+            // Sleep to the start of the next tick
+            long wait = start + (tick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                }
+                catch (InterruptedException e) {
+                    continue;    // stop() checks running
+                }
+            }
+            tick++;
+
+            // File the new tasks, counting from this tick -- the slot
+            // comes round ticks % size ticks from now, then every size
+            Timeout t;
+            while ((t = added.poll()) != null) {
+                long due = tick + t.ticks;
+                t.rounds = t.ticks / slots.length;
+                int slot = (int) (due & mask);
+                t.next = slots[slot];
+                slots[slot] = t;
+            }
+
+            // Run the due tasks in this tick's slot, keep the rest
+            int slot = (int) (tick & mask);
+            Timeout keep = null;
+            t = slots[slot];
+            slots[slot] = null;
+            while (t != null) {
+                Timeout next = t.next;
+                if (t.cancelled) {
+                    t = next;    // dropped
+                    continue;
+                }
+                if (t.rounds > 0) {
+                    t.rounds--;
+                    t.next = keep;
+                    keep = t;
+                }
+                else {
+                    try {
+                        t.task.run();
+                    }
+                    catch (RuntimeException e) {
+                        e.printStackTrace();    // one bad task must not stop the wheel
+                    }
+                }
+                t = next;
+            }
+            // Tasks the ones run scheduled have gone to added, so
+            // this slot only gets back the ones still waiting
+            while (keep != null) {
+                Timeout next = keep.next;
+                keep.next = slots[slot];
+                slots[slot] = keep;
+                keep = next;
+            }
+        }
+    }
+}
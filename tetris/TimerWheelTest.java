@@ -0,0 +1,60 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+public class TimerWheelTest {
+	TimerWheel wheel;
+
+	@Before
+	public void setUp() throws Exception {
+		wheel = new TimerWheel(1, 8);	// 8 slots, so 20ms goes round twice
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		wheel.stop();
+	}
+
+	// Tasks run no sooner than asked, in due order, and
+	// cancelled ones don't run at all
+	@Test
+	public void testOrder() throws Exception {
+		final StringBuffer order = new StringBuffer();
+		final CountDownLatch done = new CountDownLatch(3);
+		final long start = System.nanoTime();
+		final long[] when = new long[3];
+		String[] names = {"a", "b", "c"};
+		long[] delays = {20, 5, 12};
+		for (int i = 0; i < 3; i++) {
+			final int n = i;
+			final String name = names[i];
+			wheel.schedule(new Runnable() {
+				public void run() {
+					when[n] = System.nanoTime() - start;
+					order.append(name);
+					done.countDown();
+				}
+			}, delays[i]);
+		}
+		final AtomicInteger cancelled = new AtomicInteger();
+		wheel.schedule(new Runnable() {
+			public void run() {
+				cancelled.incrementAndGet();
+			}
+		}, 3).cancel();
+		
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("bca", order.toString());
+		for (int i = 0; i < 3; i++) {
+			assertTrue(when[i] >= delays[i] * 1000000L);
+		}
+		Thread.sleep(10);
+		assertEquals(0, cancelled.get());
+	}
+}
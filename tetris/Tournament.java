@@ -0,0 +1,199 @@
+// Tournament.java
+
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ Plays a set of brains against the same seeded games and sums up
+ how each did.
+
+ Every brain plays one game per seed on a GameEngine, the seeds
+ giving every brain the same pieces. The games are spread over a
+ ForkJoinPool. Each game gets a fresh brain from its factory and
+ its own engine and board, and writes its results into its own
+ slots, so the games share nothing and run on as many cores as
+ the pool has.
+
+ For each brain the summary gives the average pieces placed, lines
+ cleared and score per game, and the average and worst time per
+ move. main() runs the brains in this package, see usage there.
+*/
+public class Tournament {
+    private final List<String> names = new ArrayList<String>();
+    private final List<Supplier<? extends Brain>> factories = new ArrayList<Supplier<? extends Brain>>();
+
+    // Results of the last run(), [brain][game]
+    private int[][] pieces;
+    private int[][] lines;
+    private int[][] scores;
+    private long[][] moveNanos;
+    private long[][] worstNanos;
+
+    /**
+     Adds a brain to the tournament. The factory is called once per
+     game, from any thread, so brains need not be thread safe.
+    */
+    public void addBrain(String name, Supplier<? extends Brain> factory) {
+        names.add(name);
+        factories.add(factory);
+    }
+
+    /**
+     Plays every brain on seeds games, seeded from baseSeed,
+     stopping each game after maxPieces pieces (no limit if 0).
+    */
+    public void run(int seeds, long baseSeed, int maxPieces, ForkJoinPool pool) {
+        int brains = names.size();
+        pieces = new int[brains][seeds];
+        lines = new int[brains][seeds];
+        scores = new int[brains][seeds];
+        moveNanos = new long[brains][seeds];
+        worstNanos = new long[brains][seeds];
+
+        long[] gameSeeds = new long[seeds];
+        Random random = new Random(baseSeed);
+        for (int s = 0; s<seeds; s++) gameSeeds[s] = random.nextLong();
+
+        pool.invoke(new Games(gameSeeds, maxPieces, 0, brains * seeds));
+    }
+
+    /*
+     Plays games [lo, hi) -- game i is brain i / seeds on seed i % seeds.
+    */
+    private class Games extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] gameSeeds;
+        private final int maxPieces;
+        private final int lo, hi;
+
+        Games(long[] gameSeeds, int maxPieces, int lo, int hi) {
+            this.gameSeeds = gameSeeds;
+            this.maxPieces = maxPieces;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Games(gameSeeds, maxPieces, lo, mid),
+                    new Games(gameSeeds, maxPieces, mid, hi));
+                return;
+            }
+            int b = lo / gameSeeds.length;
+            int s = lo % gameSeeds.length;
+            play(b, s, factories.get(b).get(), gameSeeds[s], maxPieces);
+        }
+    }
+
+    private void play(int b, int s, Brain brain, long seed, int maxPieces) {
+        GameEngine game = new GameEngine(new Random(seed));
+        long total = 0;
+        long worst = 0;
+        while (game.isGameOn() && (maxPieces == 0 || game.getLanded() < maxPieces)) {
+            long start = System.nanoTime();
+            game.playMove(brain);
+            long time = System.nanoTime() - start;
+            total += time;
+            if (time > worst) worst = time;
+        }
+        pieces[b][s] = game.getLanded();
+        lines[b][s] = game.getLinesCleared();
+        scores[b][s] = game.getScore();
+        moveNanos[b][s] = total;
+        worstNanos[b][s] = worst;
+    }
+
+    public int getBrainCount() {
+        return names.size();
+    }
+
+    public String getName(int brain) {
+        return names.get(brain);
+    }
+
+    /**
+     Average pieces placed per game by the brain in the last run.
+    */
+    public double getAveragePieces(int brain) {
+        return average(pieces[brain]);
+    }
+
+    public double getAverageLines(int brain) {
+        return average(lines[brain]);
+    }
+
+    public double getAverageScore(int brain) {
+        return average(scores[brain]);
+    }
+
+    /**
+     Average time per move, in nanoseconds, over all the brain's games.
+    */
+    public double getAverageMoveNanos(int brain) {
+        long time = 0;
+        long moves = 0;
+        for (int s = 0; s<pieces[brain].length; s++) {
+            time += moveNanos[brain][s];
+            moves += pieces[brain][s];
+        }
+        return (moves == 0) ? 0 : ((double) time) / moves;
+    }
+
+    /**
+     Longest time taken by any one move, in nanoseconds.
+    */
+    public long getWorstMoveNanos(int brain) {
+        long worst = 0;
+        for (int s = 0; s<worstNanos[brain].length; s++) worst = Math.max(worst, worstNanos[brain][s]);
+        return worst;
+    }
+
+    private static double average(int[] values) {
+        if (values.length == 0) return 0;
+        long sum = 0;
+        for (int i = 0; i<values.length; i++) sum += values[i];
+        return ((double) sum) / values.length;
+    }
+
+    /**
+     Returns a table of the last run's results, one row per brain.
+    */
+    public String summary() {
+        StringBuilder buff = new StringBuilder();
+        buff.append(String.format("%-16s %10s %10s %10s %12s %12s%n",
+            "brain", "pieces", "lines", "score", "us/move", "worst us"));
+        for (int b = 0; b<names.size(); b++) {
+            buff.append(String.format("%-16s %10.1f %10.1f %10.1f %12.2f %12.1f%n",
+                names.get(b), getAveragePieces(b), getAverageLines(b), getAverageScore(b),
+                getAverageMoveNanos(b) / 1000, getWorstMoveNanos(b) / 1000.0));
+        }
+        return buff.toString();
+    }
+
+    /**
+     Runs DefaultBrain, BadBrain and the other brains here and
+     prints the summary.
+     Usage: Tournament [seeds [maxPieces]]
+    */
+    public static void main(String[] args) {
+        int seeds = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int maxPieces = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+
+        Tournament tournament = new Tournament();
+        tournament.addBrain("DefaultBrain", DefaultBrain::new);
+        tournament.addBrain("BadBrain", BadBrain::new);
+        tournament.addBrain("BeamBrain", BeamBrain::new);
+        tournament.addBrain("ExpectimaxBrain", ExpectimaxBrain::new);
+
+        tournament.run(seeds, 0, maxPieces, ForkJoinPool.commonPool());
+        System.out.print(tournament.summary());
+    }
+}
@@ -0,0 +1,49 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.*;
+
+public class TournamentTest {
+	Tournament tournament;
+
+	@Before
+	public void setUp() throws Exception {
+		tournament = new Tournament();
+		tournament.addBrain("default", DefaultBrain::new);
+		tournament.addBrain("bad", BadBrain::new);
+	}
+
+	// The results don't depend on how many threads play the games
+	@Test
+	public void testThreads() {
+		ForkJoinPool one = new ForkJoinPool(1);
+		ForkJoinPool four = new ForkJoinPool(4);
+		tournament.run(8, 3, 0, one);
+		double[] expected = {tournament.getAverageScore(0), tournament.getAverageScore(1)};
+		tournament.run(8, 3, 0, four);
+		assertEquals(expected[0], tournament.getAverageScore(0), 0);
+		assertEquals(expected[1], tournament.getAverageScore(1), 0);
+		one.shutdown();
+		four.shutdown();
+		
+		assertEquals(2, tournament.getBrainCount());
+		assertTrue(tournament.getAveragePieces(0) > tournament.getAveragePieces(1));
+		assertTrue(tournament.getWorstMoveNanos(0) >= tournament.getAverageMoveNanos(0));
+		assertTrue(tournament.summary().contains("default"));
+	}
+
+	// A game in the tournament is the game GameEngine plays
+	@Test
+	public void testSameGames() {
+		tournament.run(1, 5, 30, ForkJoinPool.commonPool());
+		GameEngine game = new GameEngine(new Random(new Random(5).nextLong()));
+		game.runGame(new DefaultBrain(), 30);
+		assertEquals(game.getLanded(), tournament.getAveragePieces(0), 0);
+		assertEquals(game.getLinesCleared(), tournament.getAverageLines(0), 0);
+		assertEquals(game.getScore(), tournament.getAverageScore(0), 0);
+	}
+}
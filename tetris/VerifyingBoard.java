@@ -0,0 +1,152 @@
+// VerifyingBoard.java
+package tetris;
+
+/**
+ * A Board that runs sanityCheck() after its operations, for tests and debug
+ * runs. Plain Board never checks itself, so production code pays nothing.
+ *
+ * <p>
+ * The mode picks how often to check: VERIFY_OFF never checks, VERIFY_SAMPLED
+ * checks after every Nth operation and VERIFY_FULL after every operation. When
+ * a check fails the board remembers which operation broke it (for sampled
+ * checking, the range of operations since the last good check) and throws a
+ * RuntimeException saying so. Later failures keep the first one recorded.
+ */
+public class VerifyingBoard extends Board {
+	public static final int VERIFY_OFF = 0;
+	public static final int VERIFY_SAMPLED = 1;
+	public static final int VERIFY_FULL = 2;
+
+	private int mode;
+	private int every;
+
+	private long operations;	// operations done so far
+	private long lastGood;		// operation number of the last passed check
+	private int checks;			// number of checks run
+	private String failure;		// description of the first failure, or null
+
+	// The operation in progress, used to describe a failure
+	private String opName;
+	private int opX, opY;
+	private static final int NONE = Integer.MIN_VALUE;
+
+	/**
+	 * Creates an empty board that checks itself after every operation.
+	 */
+	public VerifyingBoard(int width, int height) {
+		this(width, height, VERIFY_FULL, 1);
+	}
+
+	/**
+	 * Creates an empty board with the given verify mode. For VERIFY_SAMPLED, the
+	 * board is checked after every "every" operations.
+	 */
+	public VerifyingBoard(int width, int height, int mode, int every) {
+		super(width, height);
+		if (every < 1)
+			throw new RuntimeException("Bad sample interval:" + every);
+		this.mode = mode;
+		this.every = every;
+	}
+
+	/**
+	 * Returns the verify mode, one of VERIFY_OFF, VERIFY_SAMPLED, VERIFY_FULL.
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Changes the verify mode.
+	 */
+	public void setMode(int mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns the number of operations done on the board.
+	 */
+	public long getOperationCount() {
+		return operations;
+	}
+
+	/**
+	 * Returns the number of consistency checks run.
+	 */
+	public int getCheckCount() {
+		return checks;
+	}
+
+	/**
+	 * Returns a description of the operation that first left the board
+	 * inconsistent, or null if no check has failed.
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	public int place(Piece piece, int x, int y) {
+		int result = super.place(piece, x, y);
+		verify("place", x, y);
+		return result;
+	}
+
+	public int clearRows() {
+		int result = super.clearRows();
+		verify("clearRows", NONE, NONE);
+		return result;
+	}
+
+	public void undo() {
+		super.undo();
+		verify("undo", NONE, NONE);
+	}
+
+	public void commit() {
+		super.commit();
+		verify("commit", NONE, NONE);
+	}
+
+	public void rollbackTo(int mark) {
+		super.rollbackTo(mark);
+		verify("rollbackTo", mark, NONE);
+	}
+
+	/*
+	 * Counts one operation and runs sanityCheck() if the mode says so.
+	 */
+	private void verify(String name, int x, int y) {
+		operations++;
+		if (mode == VERIFY_OFF) return;
+		if (mode == VERIFY_SAMPLED && operations % every != 0) return;
+
+		opName = name;
+		opX = x;
+		opY = y;
+		checks++;
+		try {
+			sanityCheck();
+		}
+		catch (RuntimeException e) {
+			if (failure == null) {
+				failure = describe() + ": " + e.getMessage();
+			}
+			throw new RuntimeException("Board broken by " + failure, e);
+		}
+		lastGood = operations;
+	}
+
+	/*
+	 * Describes the operation (or range of operations) that broke the board.
+	 */
+	private String describe() {
+		String op = opName;
+		if (opX != NONE) {
+			op += "(" + opX + (opY != NONE ? ", " + opY : "") + ")";
+		}
+		if (operations - lastGood > 1) {
+			return "one of operations " + (lastGood + 1) + "-" + operations + ", last " + op;
+		}
+		return "operation " + operations + " " + op;
+	}
+}
@@ -0,0 +1,290 @@
+// WeightTuner.java
+
+package tetris;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ Tunes the weights of a WeightedBrain by the cross-entropy method.
+
+ Each generation draws a population of weight vectors from a normal
+ distribution (a mean and a standard deviation per weight), and
+ plays every vector through the same gamesPerVector seeded games,
+ with no GUI. A vector's fitness is the average over its games of
+ lines cleared plus pieces placed, each game stopping at maxPieces
+ if it gets that far. The distribution then moves to the mean and
+ spread of the eliteCount fittest vectors, plus a little extra
+ spread (noise) so it does not collapse too soon.
+
+ The games of a generation are spread over a ForkJoinPool, every
+ game with its own brain and board. The state of the search -- the
+ distribution, the last population and its fitness, and the best
+ vector seen -- can be saved to and restored from a checkpoint file.
+
+ main() runs the tuner from the command line, see usage there.
+*/
+public class WeightTuner {
+    private final int populationSize;
+    private final int eliteCount;
+    private final int gamesPerVector;
+    private final int maxPieces;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    private double[] mean;
+    private double[] stddev;
+    private double noise = 1.0;
+
+    private int generation;
+    private double[][] population;
+    private double[] fitness;
+    private double[] bestWeights;
+    private double bestFitness = Double.NEGATIVE_INFINITY;
+
+    /**
+     Creates a tuner that starts from the WeightedBrain default
+     weights, with a spread of 10 on every weight.
+    */
+    public WeightTuner(int populationSize, int eliteCount, int gamesPerVector,
+            int maxPieces, long seed, ForkJoinPool pool) {
+        if (eliteCount < 1 || eliteCount > populationSize || gamesPerVector < 1) {
+            throw new RuntimeException("Bad tuner size");
+        }
+        this.populationSize = populationSize;
+        this.eliteCount = eliteCount;
+        this.gamesPerVector = gamesPerVector;
+        this.maxPieces = maxPieces;
+        this.seed = seed;
+        this.pool = pool;
+
+        mean = WeightedBrain.DEFAULT_WEIGHTS.clone();
+        stddev = new double[BoardFeatures.COUNT];
+        Arrays.fill(stddev, 10.0);
+    }
+
+    /**
+     Runs one generation -- draws, plays and rates a population,
+     then updates the distribution. Returns the best fitness of
+     the generation.
+    */
+    public double step() {
+        // Draw the population -- seeded by generation, so a restored
+        // checkpoint carries on exactly as the run would have
+        Random random = new Random(seed * 31 + generation);
+        population = new double[populationSize][BoardFeatures.COUNT];
+        for (int p = 0; p<populationSize; p++) {
+            for (int w = 0; w<BoardFeatures.COUNT; w++) {
+                population[p][w] = mean[w] + stddev[w] * random.nextGaussian();
+            }
+        }
+
+        // The games, all vectors playing the same piece sequences
+        long[] gameSeeds = new long[gamesPerVector];
+        for (int g = 0; g<gamesPerVector; g++) gameSeeds[g] = random.nextLong();
+        double[][] results = new double[populationSize][gamesPerVector];
+        pool.invoke(new Games(population, gameSeeds, results, 0, populationSize * gamesPerVector));
+
+        fitness = new double[populationSize];
+        Integer[] order = new Integer[populationSize];
+        for (int p = 0; p<populationSize; p++) {
+            double sum = 0;
+            for (int g = 0; g<gamesPerVector; g++) sum += results[p][g];
+            fitness[p] = sum / gamesPerVector;
+            order[p] = p;
+        }
+        final double[] f = fitness;
+        Arrays.sort(order, (a, b) -> Double.compare(f[b], f[a]));
+
+        if (fitness[order[0]] > bestFitness) {
+            bestFitness = fitness[order[0]];
+            bestWeights = population[order[0]].clone();
+        }
+
+        // Refit the distribution to the elite
+        for (int w = 0; w<BoardFeatures.COUNT; w++) {
+            double sum = 0;
+            for (int e = 0; e<eliteCount; e++) sum += population[order[e]][w];
+            double m = sum / eliteCount;
+            double var = 0;
+            for (int e = 0; e<eliteCount; e++) {
+                double d = population[order[e]][w] - m;
+                var += d * d;
+            }
+            mean[w] = m;
+            stddev[w] = Math.sqrt(var / eliteCount + noise);
+        }
+        noise *= 0.9;
+        generation++;
+        return fitness[order[0]];
+    }
+
+    /*
+     Plays games [lo, hi) -- game i is vector i / gamesPerVector
+     on seed i % gamesPerVector.
+    */
+    private class Games extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] population;
+        private final long[] gameSeeds;
+        private final double[][] results;
+        private final int lo, hi;
+
+        Games(double[][] population, long[] gameSeeds, double[][] results, int lo, int hi) {
+            this.population = population;
+            this.gameSeeds = gameSeeds;
+            this.results = results;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Games(population, gameSeeds, results, lo, mid),
+                    new Games(population, gameSeeds, results, mid, hi));
+                return;
+            }
+            int p = lo / gamesPerVector;
+            int g = lo % gamesPerVector;
+            results[p][g] = play(new WeightedBrain(population[p]), gameSeeds[g]);
+        }
+    }
+
+    /*
+     Plays a game on a GameEngine, the brain placing each piece,
+     and returns lines cleared plus pieces placed.
+    */
+    private double play(Brain brain, long gameSeed) {
+        GameEngine game = new GameEngine(new Random(gameSeed));
+        game.runGame(brain, maxPieces);
+        return game.getLinesCleared() + game.getLanded();
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    /**
+     Returns the fittest weights seen so far, or the starting
+     mean if no generation has run yet.
+    */
+    public double[] getBestWeights() {
+        return (bestWeights == null) ? mean.clone() : bestWeights.clone();
+    }
+
+    public double getBestFitness() {
+        return bestFitness;
+    }
+
+    /**
+     Writes the tuner's state to the file, replacing it in one
+     step so a crash part way leaves the old checkpoint.
+    */
+    public void save(Path file) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("generation", Integer.toString(generation));
+        props.setProperty("noise", Double.toString(noise));
+        props.setProperty("mean", format(mean));
+        props.setProperty("stddev", format(stddev));
+        props.setProperty("bestFitness", Double.toString(bestFitness));
+        if (bestWeights != null) props.setProperty("best", format(bestWeights));
+        if (population != null) {
+            for (int p = 0; p<population.length; p++) {
+                props.setProperty("population." + p, format(population[p]));
+            }
+            props.setProperty("fitness", format(fitness));
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            props.store(out, "WeightTuner checkpoint");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     Restores the state written by save(). The tuner should have
+     been made with the same settings as the one that saved it.
+    */
+    public void load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(in);
+        }
+        generation = Integer.parseInt(props.getProperty("generation"));
+        noise = Double.parseDouble(props.getProperty("noise"));
+        mean = parse(props.getProperty("mean"));
+        stddev = parse(props.getProperty("stddev"));
+        bestFitness = Double.parseDouble(props.getProperty("bestFitness"));
+        bestWeights = props.containsKey("best") ? parse(props.getProperty("best")) : null;
+        if (props.containsKey("fitness")) {
+            fitness = parse(props.getProperty("fitness"));
+            population = new double[fitness.length][];
+            for (int p = 0; p<fitness.length; p++) {
+                population[p] = parse(props.getProperty("population." + p));
+            }
+        }
+        if (mean.length != BoardFeatures.COUNT || stddev.length != BoardFeatures.COUNT) {
+            throw new RuntimeException("Checkpoint has the wrong number of weights");
+        }
+    }
+
+    private static String format(double[] values) {
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i<values.length; i++) {
+            if (i > 0) buff.append(' ');
+            buff.append(values[i]);
+        }
+        return buff.toString();
+    }
+
+    private static double[] parse(String s) {
+        String[] parts = s.trim().split("\\s+");
+        double[] values = new double[parts.length];
+        for (int i = 0; i<parts.length; i++) values[i] = Double.parseDouble(parts[i]);
+        return values;
+    }
+
+    /**
+     Runs the tuner and prints the best weights found.
+     Usage: WeightTuner generations [checkpoint-file]
+     With a checkpoint file, the run carries on from it if it
+     exists, and saves to it after every generation.
+    */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: WeightTuner generations [checkpoint-file]");
+            System.exit(1);
+        }
+        int generations = Integer.parseInt(args[0]);
+        Path checkpoint = (args.length > 1) ? Paths.get(args[1]) : null;
+
+        WeightTuner tuner = new WeightTuner(50, 10, 20, 2000, 0, ForkJoinPool.commonPool());
+        if (checkpoint != null && Files.exists(checkpoint)) tuner.load(checkpoint);
+
+        while (tuner.getGeneration() < generations) {
+            double best = tuner.step();
+            System.out.println("generation " + tuner.getGeneration() + " best " + best);
+            if (checkpoint != null) tuner.save(checkpoint);
+        }
+        System.out.println("best weights " + Arrays.toString(tuner.getBestWeights())
+            + " fitness " + tuner.getBestFitness());
+    }
+}
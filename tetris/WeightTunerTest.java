@@ -0,0 +1,55 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.*;
+
+public class WeightTunerTest {
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("tuner", ".properties");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private WeightTuner makeTuner() {
+		return new WeightTuner(6, 2, 2, 40, 7, ForkJoinPool.commonPool());
+	}
+
+	// A run restored from a checkpoint carries on just as the
+	// original run does
+	@Test
+	public void testCheckpoint() throws Exception {
+		WeightTuner tuner = makeTuner();
+		tuner.step();
+		tuner.save(file.toPath());
+		double best = tuner.step();
+
+		WeightTuner restored = makeTuner();
+		restored.load(file.toPath());
+		assertEquals(1, restored.getGeneration());
+		assertEquals(best, restored.step(), 0);
+		assertArrayEquals(tuner.getMean(), restored.getMean(), 0);
+		assertArrayEquals(tuner.getBestWeights(), restored.getBestWeights(), 0);
+		assertEquals(tuner.getBestFitness(), restored.getBestFitness(), 0);
+	}
+
+	// Fitness is at least the pieces of the shortest possible game,
+	// and no more than maxPieces plus the lines they could clear
+	@Test
+	public void testFitness() {
+		WeightTuner tuner = makeTuner();
+		double best = tuner.step();
+		assertTrue(best >= 1);
+		assertTrue(best <= 40 + 40 * 4 / JTetris.WIDTH);
+		assertEquals(best, tuner.getBestFitness(), 0);
+	}
+}
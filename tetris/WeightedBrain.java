@@ -0,0 +1,60 @@
+// WeightedBrain.java
+
+package tetris;
+
+/**
+ A DefaultBrain whose board rating is the dot product of the
+ BoardFeatures of the board with a weight vector, one weight per
+ feature (see the BoardFeatures index constants). Lower scores are
+ better, as for any brain, so good features get negative weights.
+
+ The default weights use just the three features DefaultBrain
+ does, with its weights, so a WeightedBrain() plays exactly like
+ DefaultBrain. Not thread safe -- use one per thread.
+*/
+public class WeightedBrain extends DefaultBrain {
+    /**
+     The DefaultBrain weights -- 8*maxHeight + 40*avgHeight + 1.25*holes.
+    */
+    public static final double[] DEFAULT_WEIGHTS = {8, 40, 1.25, 0, 0, 0, 0, 0, 0};
+
+    private final double[] weights;
+    private final BoardFeatures features = new BoardFeatures();
+
+    /**
+     Creates a brain with the DefaultBrain weights.
+    */
+    public WeightedBrain() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    /**
+     Creates a brain with the given weights, which must have
+     BoardFeatures.COUNT entries. The brain keeps its own copy.
+    */
+    public WeightedBrain(double[] weights) {
+        if (weights.length != BoardFeatures.COUNT) {
+            throw new RuntimeException("Need " + BoardFeatures.COUNT + " weights");
+        }
+        this.weights = weights.clone();
+    }
+
+    /**
+     Returns a copy of the weights.
+    */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    public double rateMove(Board board, Piece piece, int x, int y) {
+        double[] f = features.compute(board, BoardFeatures.landingHeight(piece, y));
+        return BoardFeatures.score(f, weights);
+    }
+
+    /*
+     Rates a board with no move to go on, so its landing height is 0.
+    */
+    public double rateBoard(Board board) {
+        return BoardFeatures.score(features.compute(board, 0), weights);
+    }
+}
@@ -0,0 +1,40 @@
+// Zobrist.java
+package tetris;
+
+/*
+ Zobrist keys for board positions.
+ Every cell (x, y) has a fixed pseudo-random 64-bit key and a
+ position's hash is the XOR of the keys of its filled cells, so
+ filling or emptying a cell just XORs its key in or out.
+ The keys come from mixing the cell index (SplitMix64), so
+ there is no table to build or share -- every board everywhere
+ agrees on them.
+*/
+final class Zobrist {
+	private Zobrist() {
+	}
+
+	/**
+	 Returns the key for the cell at x,y.
+	*/
+	static long cellKey(int x, int y) {
+		long z = ((long) y * Board.MAX_WIDTH + x + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 Returns the XOR of the keys of the cells in row y whose
+	 bits are set in the given mask. Passing old ^ new for a
+	 row gives the change to XOR into a hash.
+	*/
+	static long rowKey(int y, long bits) {
+		long key = 0;
+		while (bits != 0) {
+			key ^= cellKey(Long.numberOfTrailingZeros(bits), y);
+			bits &= bits - 1;
+		}
+		return key;
+	}
+}